@@ -0,0 +1,14 @@
+package com.brackeen.jdb.generic;
+
+/**
+ * An IndexedTask is the body of a parallel loop, run once for each index by ThreadPool.parallelFor().
+ */
+public interface IndexedTask {
+
+    /**
+     * Runs the loop body for one index.
+     *
+     * @param index the loop index
+     */
+    void run(int index);
+}
@@ -0,0 +1,84 @@
+package com.brackeen.jdb.generic;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A LatencyHistogram counts durations in power-of-two buckets of microseconds. Bucket 0 holds durations under
+ * 1 microsecond, and bucket i holds durations from 2^(i-1) up to 2^i microseconds. The last bucket also holds
+ * everything longer.
+ * <p>Recording is lock-free and safe to call from any thread.</p>
+ */
+class LatencyHistogram {
+
+    public static final int NUM_BUCKETS = 32;
+
+    private final AtomicLongArray buckets;
+
+    /**
+     * Creates a new, empty LatencyHistogram.
+     */
+    public LatencyHistogram() {
+        buckets = new AtomicLongArray(NUM_BUCKETS);
+    }
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos the duration in nanoseconds
+     */
+    public void record(long nanos) {
+        long micros = nanos / 1000;
+        int bucket = micros <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(micros);
+        buckets.incrementAndGet(Math.min(bucket, NUM_BUCKETS - 1));
+    }
+
+    /**
+     * Copies the bucket counts.
+     *
+     * @return a new array with the count of each bucket.
+     */
+    public long[] getCounts() {
+        long[] counts = new long[NUM_BUCKETS];
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the upper bound of a bucket.
+     *
+     * @param bucket the bucket index
+     * @return the longest duration, in microseconds, counted in the bucket.
+     */
+    public static long getUpperBound(int bucket) {
+        return 1L << bucket;
+    }
+
+    /**
+     * Estimates a percentile from bucket counts.
+     *
+     * @param counts     bucket counts as returned by getCounts()
+     * @param percentile the percentile, from 0 to 100
+     * @return the upper bound, in microseconds, of the bucket holding the percentile, or 0 if nothing was
+     * recorded.
+     */
+    public static long getPercentile(long[] counts, double percentile) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0) {
+                return getUpperBound(i);
+            }
+        }
+        return getUpperBound(counts.length - 1);
+    }
+}
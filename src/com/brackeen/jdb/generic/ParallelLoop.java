@@ -0,0 +1,108 @@
+package com.brackeen.jdb.generic;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A ParallelLoop runs an IndexedTask over a range of indices on any number of threads. Each thread that runs the
+ * loop claims chunks of the range until none are left. Chunks shrink as the range runs out (guided scheduling), so
+ * threads finish at about the same time without splitting the range into many tiny chunks up front.
+ */
+class ParallelLoop implements Runnable {
+
+    private final IndexedTask body;
+    private final int end;
+    private final int minChunkSize;
+    private final int parallelism;
+    private final AtomicInteger next;
+    private final AtomicInteger remaining;
+    private final CountDownLatch done;
+    private volatile Throwable failure;
+
+    /**
+     * Creates a new ParallelLoop.
+     *
+     * @param from         the first index, inclusive
+     * @param to           the last index, exclusive
+     * @param minChunkSize the smallest number of indices claimed at once
+     * @param parallelism  the number of threads expected to run this loop
+     * @param body         the loop body
+     */
+    public ParallelLoop(int from, int to, int minChunkSize, int parallelism, IndexedTask body) {
+        this.body = body;
+        this.end = to;
+        this.minChunkSize = minChunkSize;
+        this.parallelism = parallelism;
+        next = new AtomicInteger(from);
+        remaining = new AtomicInteger(to - from);
+        done = new CountDownLatch(1);
+    }
+
+    /**
+     * Claims and runs chunks of the range until none are left.
+     */
+    public void run() {
+        while (true) {
+            // claim a chunk
+            int start = next.get();
+            if (start >= end) {
+                return;
+            }
+            int chunkSize = Math.max(minChunkSize, (end - start) / (2 * parallelism));
+            int stop = (int) Math.min((long) start + chunkSize, end);
+            if (!next.compareAndSet(start, stop)) {
+                continue;
+            }
+
+            // run it
+            try {
+                for (int i = start; i < stop; i++) {
+                    body.run(i);
+                }
+            } catch (Throwable t) {
+                if (failure == null) {
+                    failure = t;
+                }
+                // skip the rest of the range
+                int skipped = end - next.getAndSet(end);
+                if (skipped > 0) {
+                    finished(skipped);
+                }
+            }
+            finished(stop - start);
+        }
+    }
+
+    private void finished(int count) {
+        if (remaining.addAndGet(-count) == 0) {
+            done.countDown();
+        }
+    }
+
+    /**
+     * Waits until every index has run, then rethrows the first exception thrown by the loop body, if any.
+     */
+    public void await() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        Throwable t = failure;
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        } else if (t instanceof Error) {
+            throw (Error) t;
+        } else if (t != null) {
+            throw new RuntimeException(t);
+        }
+    }
+}
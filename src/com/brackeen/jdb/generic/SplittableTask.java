@@ -0,0 +1,42 @@
+package com.brackeen.jdb.generic;
+
+import java.util.List;
+
+/**
+ * A SplittableTask is a divide-and-conquer computation run by ThreadPool.invoke(). A task that is small enough is
+ * computed directly; otherwise it is split into subtasks, which run in parallel, and their results are combined.
+ *
+ * @param <T> the result type of the task
+ */
+public interface SplittableTask<T> {
+
+    /**
+     * Returns true if this task is small enough that splitting it would cost more than it gains.
+     *
+     * @return true to compute this task directly, false to split it.
+     */
+    boolean isSmall();
+
+    /**
+     * Computes this task directly, without splitting it.
+     *
+     * @return the result of this task.
+     */
+    T compute();
+
+    /**
+     * Splits this task into two or more subtasks.
+     *
+     * @return the subtasks, in the order their results are combined.
+     */
+    List<? extends SplittableTask<T>> split();
+
+    /**
+     * Combines the results of two subtasks.
+     *
+     * @param first  the combined result of the earlier subtasks
+     * @param second the result of the next subtask
+     * @return the combined result.
+     */
+    T combine(T first, T second);
+}
@@ -0,0 +1,120 @@
+package com.brackeen.jdb.generic;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A TaskDeque is a lock-free work-stealing deque (Chase-Lev). The owning thread pushes and pops tasks at the
+ * bottom (LIFO), and any other thread may steal tasks from the top (FIFO).
+ * <p>Only the owning thread may call push() and pop(). steal() and size() are safe to call from any thread.</p>
+ */
+class TaskDeque {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private volatile AtomicReferenceArray<Runnable> array;
+    private final AtomicLong top;
+    private volatile long bottom;
+
+    /**
+     * Creates a new, empty TaskDeque.
+     */
+    public TaskDeque() {
+        array = new AtomicReferenceArray<Runnable>(INITIAL_CAPACITY);
+        top = new AtomicLong();
+        bottom = 0;
+    }
+
+    /**
+     * Pushes a task onto the bottom of this deque. Must only be called by the owning thread.
+     *
+     * @param task the task to push
+     */
+    public void push(Runnable task) {
+        long b = bottom;
+        long t = top.get();
+        AtomicReferenceArray<Runnable> a = array;
+        if (b - t >= a.length() - 1) {
+            a = grow(a, t, b);
+            array = a;
+        }
+        a.set((int) (b & (a.length() - 1)), task);
+        bottom = b + 1;
+    }
+
+    /**
+     * Pops the most recently pushed task from the bottom of this deque. Must only be called by the owning thread.
+     *
+     * @return the task, or null if this deque is empty or the last task was stolen.
+     */
+    public Runnable pop() {
+        long b = bottom - 1;
+        AtomicReferenceArray<Runnable> a = array;
+        bottom = b;
+        long t = top.get();
+        if (t > b) {
+            // empty
+            bottom = t;
+            return null;
+        }
+        int index = (int) (b & (a.length() - 1));
+        Runnable task = a.get(index);
+        if (t == b) {
+            // last task: race against thieves for it
+            if (!top.compareAndSet(t, t + 1)) {
+                task = null;
+            }
+            bottom = t + 1;
+        } else {
+            // no thief can reach this slot, so clear it for the garbage collector
+            a.set(index, null);
+        }
+        return task;
+    }
+
+    /**
+     * Steals the oldest task from the top of this deque.
+     *
+     * @return the task, or null if this deque is empty or another thread won the race for the task.
+     */
+    public Runnable steal() {
+        long t = top.get();
+        long b = bottom;
+        if (t >= b) {
+            return null;
+        }
+        AtomicReferenceArray<Runnable> a = array;
+        Runnable task = a.get((int) (t & (a.length() - 1)));
+        if (!top.compareAndSet(t, t + 1)) {
+            return null;
+        }
+        return task;
+    }
+
+    /**
+     * Returns an estimate of the number of tasks in this deque.
+     *
+     * @return the approximate number of tasks
+     */
+    public int size() {
+        long n = bottom - top.get();
+        return n > 0 ? (int) n : 0;
+    }
+
+    /**
+     * Removes all tasks from this deque.
+     */
+    public void clear() {
+        while (steal() != null || size() > 0) {
+            // keep stealing until the deque is empty
+        }
+    }
+
+    private AtomicReferenceArray<Runnable> grow(AtomicReferenceArray<Runnable> a, long t, long b) {
+        AtomicReferenceArray<Runnable> newArray = new AtomicReferenceArray<Runnable>(a.length() * 2);
+        for (long i = t; i < b; i++) {
+            newArray.set((int) (i & (newArray.length() - 1)), a.get((int) (i & (a.length() - 1))));
+        }
+        return newArray;
+    }
+}
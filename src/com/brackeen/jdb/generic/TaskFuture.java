@@ -0,0 +1,144 @@
+package com.brackeen.jdb.generic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A TaskFuture is the completion handle of a task submitted to a ThreadPool. It can be waited on with get(),
+ * cancelled with cancel(), or chained to another task with then(). The ThreadPool stays alive while its tasks
+ * complete.
+ *
+ * @param <V> the result type of the task
+ */
+public class TaskFuture<V> extends FutureTask<V> {
+
+    /**
+     * A Continuation computes a new result from the result of a completed task.
+     *
+     * @param <V> the result type of the completed task
+     * @param <R> the result type of the continuation
+     */
+    public interface Continuation<V, R> {
+
+        /**
+         * Computes a result from the result of a completed task.
+         *
+         * @param result the result of the completed task
+         * @return the result of this continuation
+         * @throws Exception if unable to compute a result
+         */
+        R apply(V result) throws Exception;
+    }
+
+    private final ThreadPool pool;
+    private List<TaskFuture<?>> continuations;
+    private boolean finished;
+    // set on the thread that runs this task
+    private boolean failed;
+
+    TaskFuture(ThreadPool pool, Callable<V> callable) {
+        super(callable);
+        this.pool = pool;
+        continuations = new ArrayList<TaskFuture<?>>();
+    }
+
+    /**
+     * Attempts to cancel this task. If the task is still waiting in its ThreadPool, it is removed from the queue
+     * and never runs.
+     *
+     * @param mayInterruptIfRunning true if the thread running this task should be interrupted
+     * @return false if the task could not be cancelled, typically because it has already completed.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if (cancelled) {
+            pool.removeTask(this);
+        }
+        return cancelled;
+    }
+
+    /**
+     * Chains a continuation to this task. Once this task completes normally, the continuation runs on the same
+     * ThreadPool with this task's result. If this task fails, the returned TaskFuture fails with the same
+     * exception, and if this task is cancelled, the returned TaskFuture is cancelled too.
+     * <p>If the ThreadPool has been closed by the time this task completes, the continuation is cancelled.</p>
+     *
+     * @param continuation the continuation to run after this task
+     * @param <R>          the result type of the continuation
+     * @return the completion handle of the continuation
+     */
+    public <R> TaskFuture<R> then(final Continuation<? super V, ? extends R> continuation) {
+        TaskFuture<R> next = new TaskFuture<R>(pool, new Callable<R>() {
+            @Override
+            public R call() throws Exception {
+                V result;
+                try {
+                    result = get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception) {
+                        throw (Exception) cause;
+                    }
+                    throw e;
+                }
+                return continuation.apply(result);
+            }
+        });
+
+        boolean runNow;
+        synchronized (this) {
+            runNow = finished;
+            if (!finished) {
+                continuations.add(next);
+            }
+        }
+        if (runNow) {
+            schedule(next);
+        }
+        return next;
+    }
+
+    @Override
+    protected void setException(Throwable t) {
+        failed = true;
+        super.setException(t);
+    }
+
+    /**
+     * Checks whether running this task threw an exception. Only meaningful on the thread that ran it.
+     *
+     * @return true if the task failed.
+     */
+    boolean isFailed() {
+        return failed;
+    }
+
+    @Override
+    protected void done() {
+        List<TaskFuture<?>> ready;
+        synchronized (this) {
+            finished = true;
+            ready = continuations;
+            continuations = null;
+        }
+        for (TaskFuture<?> next : ready) {
+            schedule(next);
+        }
+    }
+
+    private void schedule(TaskFuture<?> next) {
+        if (isCancelled()) {
+            next.cancel(false);
+            return;
+        }
+        try {
+            pool.runTask(next);
+        } catch (IllegalStateException e) {
+            next.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.brackeen.jdb.generic;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+
+/**
+ * A TaskQueue holds the tasks waiting to run in a ThreadPool, in one FIFO lane per ThreadPool.Priority.
+ * Higher-priority lanes are served first, but a task that has waited longer than the aging time is served before
+ * any other, so low-priority tasks can't starve.
+ * <p>A TaskQueue is not thread-safe; the ThreadPool guards it with its own lock.</p>
+ */
+class TaskQueue {
+
+    private static final ThreadPool.Priority[] PRIORITIES = ThreadPool.Priority.values();
+
+    private final LinkedList<QueuedTask>[] lanes;
+    private int size;
+    private long agingTime;
+    private final ThreadPoolMetrics metrics;
+
+    /**
+     * Creates a new, empty TaskQueue.
+     *
+     * @param agingTime the time in milliseconds after which a waiting task is served ahead of higher priorities
+     * @param metrics   the metrics to record queue depth and wait times in
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TaskQueue(long agingTime, ThreadPoolMetrics metrics) {
+        lanes = new LinkedList[PRIORITIES.length];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new LinkedList<QueuedTask>();
+        }
+        setAgingTime(agingTime);
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the time after which a waiting task is served ahead of higher priorities.
+     *
+     * @param agingTime the aging time in milliseconds
+     */
+    public void setAgingTime(long agingTime) {
+        this.agingTime = agingTime * 1000000;
+    }
+
+    /**
+     * Adds a task to the end of its priority lane.
+     *
+     * @param task     the task to add
+     * @param priority the priority of the task
+     */
+    public void add(Runnable task, ThreadPool.Priority priority) {
+        lanes[priority.ordinal()].add(new QueuedTask(task, System.nanoTime()));
+        size++;
+        metrics.queueDepthChanged(size);
+    }
+
+    /**
+     * Removes the next task to run: the oldest task that has waited longer than the aging time, if any, otherwise
+     * the oldest task of the highest non-empty priority.
+     *
+     * @return the next task to run.
+     * @throws NoSuchElementException if this TaskQueue is empty.
+     */
+    public Runnable removeFirst() {
+        LinkedList<QueuedTask> next = null;
+        long now = System.nanoTime();
+        long oldestTime = now - agingTime;
+        for (LinkedList<QueuedTask> lane : lanes) {
+            if (lane.size() > 0) {
+                if (next == null) {
+                    next = lane;
+                }
+                // an aged task in a lower lane overtakes younger tasks in higher lanes
+                long queueTime = lane.getFirst().queueTime;
+                if (queueTime - oldestTime < 0) {
+                    next = lane;
+                    oldestTime = queueTime;
+                }
+            }
+        }
+        if (next == null) {
+            throw new NoSuchElementException();
+        }
+        size--;
+        metrics.queueDepthChanged(size);
+        QueuedTask queuedTask = next.removeFirst();
+        metrics.taskDequeued(now - queuedTask.queueTime);
+        return queuedTask.task;
+    }
+
+    /**
+     * Removes the oldest task of the lowest non-empty priority, to make room in a full queue.
+     *
+     * @return the removed task.
+     * @throws NoSuchElementException if this TaskQueue is empty.
+     */
+    public Runnable removeLowest() {
+        for (int i = lanes.length - 1; i >= 0; i--) {
+            if (lanes[i].size() > 0) {
+                size--;
+                metrics.queueDepthChanged(size);
+                return lanes[i].removeFirst().task;
+            }
+        }
+        throw new NoSuchElementException();
+    }
+
+    /**
+     * Removes a waiting task.
+     *
+     * @param task the task to remove
+     * @return true if the task was waiting in this TaskQueue.
+     */
+    public boolean remove(Runnable task) {
+        for (LinkedList<QueuedTask> lane : lanes) {
+            Iterator<QueuedTask> i = lane.iterator();
+            while (i.hasNext()) {
+                if (i.next().task == task) {
+                    i.remove();
+                    size--;
+                    metrics.queueDepthChanged(size);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes all waiting tasks.
+     */
+    public void clear() {
+        for (LinkedList<QueuedTask> lane : lanes) {
+            lane.clear();
+        }
+        size = 0;
+        metrics.queueDepthChanged(size);
+    }
+
+    /**
+     * Returns the number of waiting tasks.
+     *
+     * @return the number of tasks in all lanes.
+     */
+    public int size() {
+        return size;
+    }
+
+    private static class QueuedTask {
+
+        Runnable task;
+        long queueTime;
+
+        public QueuedTask(Runnable task, long queueTime) {
+            this.task = task;
+            this.queueTime = queueTime;
+        }
+    }
+}
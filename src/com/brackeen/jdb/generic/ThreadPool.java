@@ -1,60 +1,955 @@
 package com.brackeen.jdb.generic;
 
-import java.util.LinkedList;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * A thread pool is a group of a limited number of threads that are used to execute tasks.
+ * <p>By default, tasks wait in a single FIFO queue. A ThreadPool created with work stealing enabled instead gives
+ * each thread its own deque of tasks: idle threads steal tasks from busy ones, and tasks are submitted without
+ * locking. Work stealing scales better with many threads and many small tasks, but tasks no longer start in the
+ * order they are received.</p>
+ * <p>A ThreadPool created with newTaskThreadPool() has no pooled threads at all. Each task runs on a thread of its
+ * own, a virtual thread when the Java runtime supports them, so tasks that block on I/O don't tie up pooled
+ * threads.</p>
+ * <p>A FIFO ThreadPool can also be elastic: threads are started on demand up to a maximum, and threads beyond the
+ * core size retire after being idle for a while. Its queue can be bounded, with a RejectionPolicy deciding what
+ * happens to tasks submitted while the queue is full.</p>
+ * <p>Tasks can be given a Priority. Waiting tasks of a higher priority start before those of a lower priority,
+ * except that a task that has waited longer than the aging time starts first, so background work keeps moving
+ * even while frame-critical work is queued. Priorities are ignored in work-stealing mode.</p>
+ * <p>parallelFor() and invoke() split loops and divide-and-conquer computations across the threads of a
+ * ThreadPool, with the calling thread doing its share of the work.</p>
+ * <p>Every ThreadPool keeps lock-free metrics, readable with getStats() or through JMX after registerMBean().</p>
  */
 public class ThreadPool extends ThreadGroup {
 
-    private boolean isAlive;
-    private LinkedList<Runnable> taskQueue;
+    /**
+     * A RejectionPolicy decides what happens to a task submitted while a bounded task queue is full.
+     */
+    public enum RejectionPolicy {
+        /**
+         * The submitting thread waits until there is room in the queue.
+         */
+        BLOCK,
+        /**
+         * The submitting thread runs the task itself, which also slows down the producer.
+         */
+        CALLER_RUNS,
+        /**
+         * The oldest waiting task of the lowest waiting priority is dropped to make room. A dropped Future is
+         * cancelled.
+         */
+        DROP_OLDEST
+    }
+
+    /**
+     * The Priority of a task decides which waiting task starts next.
+     */
+    public enum Priority {
+        /**
+         * Work that must finish soon, like per-frame AI or physics.
+         */
+        HIGH,
+        /**
+         * The priority of tasks submitted without one.
+         */
+        NORMAL,
+        /**
+         * Work that can wait, like background loading.
+         */
+        LOW
+    }
+
+    /**
+     * The default time in milliseconds after which a waiting task starts ahead of higher-priority tasks.
+     */
+    public static final long DEFAULT_AGING_TIME = 250;
+
+    private volatile boolean isAlive;
+    private TaskQueue taskQueue;
+    private final ThreadPoolMetrics metrics = new ThreadPoolMetrics();
+    private ObjectName mbeanName;
     private int threadID;
     private static int threadPoolID;
 
+    // FIFO mode sizing
+    private int coreThreads;
+    private int maxThreads;
+    private long keepAliveTime;
+    private int numThreads;
+    private int idleThreads;
+    // started, but not yet looking for a task
+    private int startingThreads;
+
+    // bounded queue
+    private int queueCapacity;
+    private RejectionPolicy rejectionPolicy;
+    private int blockedProducers;
+
+    // work-stealing mode only
+    private final boolean workStealing;
+    private PooledThread[] workers;
+    private ConcurrentLinkedQueue<QueuedTask> submissionQueue;
+    private ConcurrentLinkedQueue<PooledThread> idleWorkers;
+
+    // thread-per-task mode only
+    private ThreadFactory taskThreadFactory;
+    private int maxConcurrentTasks;
+    private Set<Thread> taskThreads;
+
     /**
-     * Creates a new ThreadPool.
+     * Creates a new ThreadPool. Tasks start execution in the order they are received.
      *
      * @param numThreads The number of threads in the pool.
      */
     public ThreadPool(int numThreads) {
+        this(numThreads, false);
+    }
+
+    /**
+     * Creates a new ThreadPool, optionally using work stealing.
+     *
+     * @param numThreads   The number of threads in the pool.
+     * @param workStealing true to give each thread its own task deque and let idle threads steal tasks from busy
+     *                     ones. Tasks may then start in any order. false to use a single FIFO queue.
+     */
+    public ThreadPool(int numThreads, boolean workStealing) {
         super("ThreadPool-" + (threadPoolID++));
         setDaemon(true);
 
         isAlive = true;
+        this.workStealing = workStealing;
+
+        taskQueue = new TaskQueue(DEFAULT_AGING_TIME, metrics);
+        queueCapacity = Integer.MAX_VALUE;
+        if (workStealing) {
+            submissionQueue = new ConcurrentLinkedQueue<QueuedTask>();
+            idleWorkers = new ConcurrentLinkedQueue<PooledThread>();
+            workers = new PooledThread[numThreads];
+            for (int i = 0; i < numThreads; i++) {
+                workers[i] = new PooledThread(i);
+            }
+            metrics.poolSizeChanged(numThreads);
+            for (PooledThread worker : workers) {
+                worker.start();
+            }
+        } else {
+            coreThreads = numThreads;
+            maxThreads = numThreads;
+            for (int i = 0; i < numThreads; i++) {
+                startThread();
+            }
+        }
+    }
+
+    /**
+     * Creates a new elastic ThreadPool with a FIFO task queue. No threads are started up front: a thread is started
+     * whenever tasks are waiting and fewer than maxThreads threads exist. Threads beyond coreThreads exit after
+     * being idle for keepAliveTime milliseconds.
+     *
+     * @param coreThreads     The number of threads kept alive while idle.
+     * @param maxThreads      The maximum number of threads in the pool.
+     * @param keepAliveTime   The time in milliseconds an idle thread beyond the core size waits for a task before
+     *                        exiting, or 0 for such threads to exit as soon as the queue is empty.
+     * @param queueCapacity   The maximum number of waiting tasks, or 0 for an unbounded queue.
+     * @param rejectionPolicy What happens to tasks submitted while the queue is full.
+     */
+    public ThreadPool(int coreThreads, int maxThreads, long keepAliveTime, int queueCapacity,
+                      RejectionPolicy rejectionPolicy) {
+        super("ThreadPool-" + (threadPoolID++));
+        if (coreThreads < 0 || maxThreads <= 0 || maxThreads < coreThreads || keepAliveTime < 0 ||
+                queueCapacity < 0 || rejectionPolicy == null) {
+            throw new IllegalArgumentException();
+        }
+        // not a daemon group: it must survive all of its threads retiring while idle
+
+        isAlive = true;
+        workStealing = false;
+
+        taskQueue = new TaskQueue(DEFAULT_AGING_TIME, metrics);
+        this.coreThreads = coreThreads;
+        this.maxThreads = maxThreads;
+        this.keepAliveTime = keepAliveTime;
+        this.queueCapacity = queueCapacity > 0 ? queueCapacity : Integer.MAX_VALUE;
+        this.rejectionPolicy = rejectionPolicy;
+    }
+
+    private ThreadPool(ThreadFactory taskThreadFactory, int maxConcurrentTasks) {
+        super("ThreadPool-" + (threadPoolID++));
+        // not a daemon group: it must survive all of its task threads exiting while the queue is empty
+
+        isAlive = true;
+        workStealing = false;
+
+        taskQueue = new TaskQueue(DEFAULT_AGING_TIME, metrics);
+        queueCapacity = Integer.MAX_VALUE;
+        if (taskThreadFactory == null) {
+            taskThreadFactory = new PlatformThreadFactory();
+            if (maxConcurrentTasks == 0) {
+                // a platform thread per queued task would be unbounded
+                maxConcurrentTasks = Runtime.getRuntime().availableProcessors();
+            }
+        }
+        this.taskThreadFactory = taskThreadFactory;
+        this.maxConcurrentTasks = maxConcurrentTasks;
+        taskThreads = new HashSet<Thread>();
+    }
+
+    /**
+     * Creates a new ThreadPool that runs each task on a thread of its own instead of on a fixed number of pooled
+     * threads. Virtual threads are used if the Java runtime supports them; otherwise daemon threads in this
+     * ThreadPool's group are used, and a limit of 0 becomes the number of available processors.
+     * <p>Tasks start execution in the order they are received. runTask(), close() and join() behave as they do
+     * for any other ThreadPool.</p>
+     *
+     * @param maxConcurrentTasks The maximum number of tasks running at once, or 0 for no limit with virtual threads
+     *                           (the number of available processors without). Tasks beyond the limit wait in the
+     *                           queue, which keeps the memory used by blocked tasks bounded.
+     * @return the new ThreadPool.
+     */
+    public static ThreadPool newTaskThreadPool(int maxConcurrentTasks) {
+        if (maxConcurrentTasks < 0) {
+            throw new IllegalArgumentException();
+        }
+        return new ThreadPool(createVirtualThreadFactory(), maxConcurrentTasks);
+    }
 
-        taskQueue = new LinkedList<Runnable>();
-        for (int i = 0; i < numThreads; i++) {
-            new PooledThread().start();
+    /**
+     * Looks up the virtual thread factory (Thread.ofVirtual().factory()) by reflection, so this class still runs
+     * on Java runtimes without virtual threads.
+     *
+     * @return a ThreadFactory that creates virtual threads, or null if virtual threads are not supported.
+     */
+    private static ThreadFactory createVirtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (Exception e) {
+            return null;
         }
     }
 
     /**
      * Requests a new task to run. This method returns immediately, and the task executes on the next
      * available idle thread in this ThreadPool.
-     * <p>Tasks start execution in the order they are received.</p>
+     * <p>Tasks start execution in the order they are received, unless this ThreadPool uses work stealing.</p>
+     * <p>If the task queue is bounded and full, the task is handled according to the RejectionPolicy.</p>
      *
      * @param task The task to run. If null, no action is taken.
      * @throws IllegalStateException if this ThreadPool is already closed.
      */
-    public synchronized void runTask(Runnable task) {
+    public void runTask(Runnable task) {
+        runTask(task, Priority.NORMAL);
+    }
+
+    /**
+     * Requests a new task to run with the specified priority. This method returns immediately, and the task
+     * executes on the next available idle thread in this ThreadPool.
+     * <p>Waiting tasks start in priority order, and in the order they are received within a priority, unless this
+     * ThreadPool uses work stealing. A task that has waited longer than the aging time starts ahead of any
+     * priority.</p>
+     *
+     * @param task     The task to run. If null, no action is taken.
+     * @param priority The priority of the task.
+     * @throws IllegalStateException if this ThreadPool is already closed.
+     */
+    public void runTask(Runnable task, Priority priority) {
+        if (workStealing) {
+            if (!isAlive) {
+                throw new IllegalStateException();
+            }
+            if (task != null) {
+                pushTask(task);
+            }
+        } else if (!queueTask(task, priority)) {
+            metrics.taskRejected();
+            task.run();
+        }
+    }
+
+    /**
+     * Requests a batch of tasks to run. This method returns immediately. The whole batch is queued in a single
+     * handoff, and at most one idle thread is woken per task.
+     * <p>Tasks start execution in the order the collection iterates them, unless this ThreadPool uses work
+     * stealing.</p>
+     *
+     * @param tasks The tasks to run. Null elements are ignored.
+     * @throws IllegalStateException if this ThreadPool is already closed.
+     */
+    public void runTasks(Collection<? extends Runnable> tasks) {
+        runTasks(tasks, Priority.NORMAL);
+    }
+
+    /**
+     * Requests a batch of tasks to run with the specified priority. This method returns immediately. The whole
+     * batch is queued in a single handoff, and at most one idle thread is woken per task.
+     *
+     * @param tasks    The tasks to run. Null elements are ignored.
+     * @param priority The priority of the tasks.
+     * @throws IllegalStateException if this ThreadPool is already closed.
+     */
+    public void runTasks(Collection<? extends Runnable> tasks, Priority priority) {
+        if (workStealing) {
+            if (!isAlive) {
+                throw new IllegalStateException();
+            }
+            pushTasks(tasks);
+        } else {
+            for (Runnable task : queueTasks(tasks, priority)) {
+                metrics.taskRejected();
+                task.run();
+            }
+        }
+    }
+
+    /**
+     * Requests a new task to run and returns its completion handle. This method returns immediately, and the task
+     * executes like any task passed to runTask(). The returned TaskFuture can be waited on, chained, or cancelled
+     * while this ThreadPool stays alive; a cancelled task is removed from the queue before it runs.
+     *
+     * @param task The task to run.
+     * @param <T>  The result type of the task.
+     * @return the TaskFuture for the task.
+     * @throws IllegalStateException if this ThreadPool is already closed.
+     * @throws NullPointerException  if the task is null.
+     */
+    public <T> TaskFuture<T> submit(Callable<T> task) {
+        return submit(task, Priority.NORMAL);
+    }
+
+    /**
+     * Requests a new task to run with the specified priority and returns its completion handle.
+     *
+     * @param task     The task to run.
+     * @param priority The priority of the task.
+     * @param <T>      The result type of the task.
+     * @return the TaskFuture for the task.
+     * @throws IllegalStateException if this ThreadPool is already closed.
+     * @throws NullPointerException  if the task is null.
+     */
+    public <T> TaskFuture<T> submit(Callable<T> task, Priority priority) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        TaskFuture<T> future = new TaskFuture<T>(this, task);
+        runTask(future, priority);
+        return future;
+    }
+
+    /**
+     * Sets the time after which a waiting task starts ahead of higher-priority tasks. The default is
+     * DEFAULT_AGING_TIME.
+     *
+     * @param agingTime The aging time in milliseconds.
+     */
+    public synchronized void setAgingTime(long agingTime) {
+        taskQueue.setAgingTime(agingTime);
+    }
+
+    /**
+     * Runs body.run(i) for every index i from <code>from</code> (inclusive) to <code>to</code> (exclusive), split
+     * across the threads of this ThreadPool and the calling thread, and returns when all indices have run.
+     * Equivalent to parallelFor(from, to, 1, body).
+     *
+     * @param from The first index, inclusive.
+     * @param to   The last index, exclusive.
+     * @param body The loop body.
+     * @throws IllegalStateException if this ThreadPool is already closed.
+     */
+    public void parallelFor(int from, int to, IndexedTask body) {
+        parallelFor(from, to, 1, body);
+    }
+
+    /**
+     * Runs body.run(i) for every index i from <code>from</code> (inclusive) to <code>to</code> (exclusive), split
+     * across the threads of this ThreadPool and the calling thread, and returns when all indices have run.
+     * <p>Threads claim chunks of the range as they go, starting large and shrinking toward minChunkSize, so the
+     * work balances without splitting it into many tiny tasks. A range no larger than minChunkSize runs on the
+     * calling thread alone. If the body throws an exception, the remaining indices are skipped and the exception
+     * is rethrown to the caller.</p>
+     * <p>An elastic pool is not grown for the loop: it gets one helper per thread it already has, or one helper if
+     * it has none.</p>
+     *
+     * @param from         The first index, inclusive.
+     * @param to           The last index, exclusive.
+     * @param minChunkSize The smallest number of indices a thread claims at once. Use larger values for cheaper
+     *                     loop bodies.
+     * @param body         The loop body.
+     * @throws IllegalStateException if this ThreadPool is already closed.
+     */
+    public void parallelFor(int from, int to, int minChunkSize, IndexedTask body) {
+        if (minChunkSize < 1) {
+            throw new IllegalArgumentException();
+        }
+        long count = (long) to - from;
+        if (count <= 0) {
+            return;
+        }
+        if (count <= minChunkSize) {
+            for (int i = from; i < to; i++) {
+                body.run(i);
+            }
+            return;
+        }
+
+        int parallelism = getParallelism();
+        ParallelLoop loop = new ParallelLoop(from, to, minChunkSize, parallelism + 1, body);
+        int numHelpers = (int) Math.min(parallelism, (count - 1) / minChunkSize);
+        runTasks(Collections.nCopies(numHelpers, loop), Priority.HIGH);
+        loop.run();
+
+        // helpers that never started have nothing left to do
+        while (removeTask(loop)) {
+            // keep removing
+        }
+        loop.await();
+    }
+
+    /**
+     * Runs a divide-and-conquer computation on this ThreadPool and the calling thread. A task that is not small is
+     * split; every subtask but the first is submitted to this ThreadPool, and the first is computed on the current
+     * thread. Submitted subtasks that no thread has started by the time their result is needed are taken back and
+     * computed on the current thread too.
+     * <p>An unchecked exception thrown by any subtask is rethrown to the caller.</p>
+     *
+     * @param task The task to compute.
+     * @param <T>  The result type of the task.
+     * @return the result of the task.
+     * @throws IllegalStateException if this ThreadPool is already closed.
+     */
+    public <T> T invoke(final SplittableTask<T> task) {
+        if (task.isSmall()) {
+            return task.compute();
+        }
+        List<? extends SplittableTask<T>> subtasks = task.split();
+        List<TaskFuture<T>> forks = new ArrayList<TaskFuture<T>>(subtasks.size() - 1);
+        for (int i = 1; i < subtasks.size(); i++) {
+            final SplittableTask<T> subtask = subtasks.get(i);
+            forks.add(submit(new Callable<T>() {
+                @Override
+                public T call() {
+                    return invoke(subtask);
+                }
+            }, Priority.HIGH));
+        }
+
+        T result = invoke(subtasks.get(0));
+
+        // join in reverse order, so the most recently forked subtasks are taken back first
+        List<T> results = new ArrayList<T>(forks.size());
+        for (int i = forks.size() - 1; i >= 0; i--) {
+            results.add(joinFork(forks.get(i), subtasks.get(i + 1)));
+        }
+        for (int i = results.size() - 1; i >= 0; i--) {
+            result = task.combine(result, results.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Waits for a forked subtask, running it on the current thread if no thread has started it yet, or if it was
+     * dropped from a full queue (RejectionPolicy.DROP_OLDEST).
+     */
+    private <T> T joinFork(TaskFuture<T> fork, SplittableTask<T> subtask) {
+        if (removeTask(fork)) {
+            fork.run();
+        }
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return fork.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (CancellationException e) {
+            return invoke(subtask);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of threads expected to run this ThreadPool's tasks at once.
+     */
+    private int getParallelism() {
+        if (workStealing) {
+            return workers.length;
+        } else if (taskThreadFactory != null) {
+            return maxConcurrentTasks > 0 ? maxConcurrentTasks : Runtime.getRuntime().availableProcessors();
+        } else {
+            // an elastic pool would start up to maxThreads threads for the helpers; use the threads it has
+            return Math.max(1, Math.max(coreThreads, metrics.poolSize.get()));
+        }
+    }
+
+    /**
+     * Removes a task that is waiting to run. In work-stealing mode, a task on a thread's deque can only be removed
+     * by that thread, and only while it is the most recently pushed task.
+     *
+     * @param task the task to remove
+     * @return true if the task was removed, false if it was not waiting in a shared queue.
+     */
+    boolean removeTask(Runnable task) {
+        boolean removed;
+        if (workStealing) {
+            removed = false;
+            PooledThread worker = currentWorker();
+            if (worker != null) {
+                Runnable top = worker.deque.pop();
+                if (top != null && ((QueuedTask) top).task == task) {
+                    removed = true;
+                } else if (top != null) {
+                    worker.deque.push(top);
+                }
+            }
+            if (!removed) {
+                Iterator<QueuedTask> i = submissionQueue.iterator();
+                while (i.hasNext()) {
+                    if (i.next().task == task) {
+                        i.remove();
+                        removed = true;
+                        break;
+                    }
+                }
+            }
+        } else {
+            synchronized (this) {
+                removed = taskQueue.remove(task);
+            }
+        }
+        if (removed) {
+            metrics.taskRemoved();
+        }
+        return removed;
+    }
+
+    /**
+     * Queues a task and wakes a thread to run it.
+     *
+     * @return false if the caller should run the task itself (RejectionPolicy.CALLER_RUNS), true otherwise.
+     */
+    private synchronized boolean queueTask(Runnable task, Priority priority) {
         if (!isAlive) {
             throw new IllegalStateException();
         }
         if (task != null) {
-            taskQueue.add(task);
-            notify();
+            if (!offerTask(task, priority)) {
+                return false;
+            }
+            signalTasks(1);
+        }
+        return true;
+    }
+
+    /**
+     * Queues a batch of tasks and wakes up to one thread per task.
+     *
+     * @return the tasks the caller should run itself (RejectionPolicy.CALLER_RUNS).
+     */
+    private synchronized List<Runnable> queueTasks(Collection<? extends Runnable> tasks, Priority priority) {
+        if (!isAlive) {
+            throw new IllegalStateException();
+        }
+        List<Runnable> rejected = new ArrayList<Runnable>(0);
+        int count = 0;
+        for (Runnable task : tasks) {
+            if (task != null) {
+                if (offerTask(task, priority)) {
+                    count++;
+                } else {
+                    rejected.add(task);
+                }
+            }
+        }
+        signalTasks(count);
+        return rejected;
+    }
+
+    /**
+     * Adds a task to the queue, applying the RejectionPolicy if the queue is full. Must be called while holding
+     * this ThreadPool's lock.
+     *
+     * @return false if the task was not queued and the caller should run it, true otherwise.
+     */
+    private boolean offerTask(Runnable task, Priority priority) {
+        if (taskQueue.size() >= queueCapacity) {
+            switch (rejectionPolicy) {
+                case BLOCK:
+                    blockedProducers++;
+                    try {
+                        // make sure every queued task has a thread before waiting for room
+                        signalTasks(0);
+                        while (taskQueue.size() >= queueCapacity) {
+                            wait();
+                            if (!isAlive) {
+                                throw new IllegalStateException();
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException();
+                    } finally {
+                        blockedProducers--;
+                    }
+                    break;
+                case CALLER_RUNS:
+                    return false;
+                case DROP_OLDEST:
+                    Runnable dropped = taskQueue.removeLowest();
+                    metrics.taskRejected();
+                    if (dropped instanceof Future) {
+                        ((Future<?>) dropped).cancel(false);
+                    }
+                    break;
+            }
+        }
+        taskQueue.add(task, priority);
+        metrics.taskSubmitted(1);
+        return true;
+    }
+
+    /**
+     * Wakes or starts threads for newly queued tasks. Must be called while holding this ThreadPool's lock.
+     *
+     * @param count the number of tasks just queued
+     */
+    private void signalTasks(int count) {
+        if (taskThreadFactory != null) {
+            startTaskThreads(count);
+            return;
+        }
+        if (blockedProducers > 0) {
+            // producers wait on this monitor too, so make sure an idle thread is among the woken
+            notifyAll();
+        } else {
+            for (int i = 0; i < count; i++) {
+                notify();
+            }
+        }
+        while (taskQueue.size() > idleThreads + startingThreads && numThreads < maxThreads) {
+            startThread();
         }
     }
 
+    /**
+     * Starts a new PooledThread. Must be called while holding this ThreadPool's lock, or from a constructor.
+     */
+    private void startThread() {
+        new PooledThread(numThreads).start();
+        numThreads++;
+        startingThreads++;
+        metrics.poolSizeChanged(numThreads);
+    }
+
+    /**
+     * Removes the first task from the queue, waking producers blocked on a full queue. Must be called while
+     * holding this ThreadPool's lock.
+     */
+    private Runnable removeFirstTask() {
+        Runnable task = taskQueue.removeFirst();
+        if (blockedProducers > 0) {
+            notifyAll();
+        }
+        return task;
+    }
+
+    private synchronized void threadStarted() {
+        startingThreads--;
+    }
+
     protected synchronized Runnable getTask() throws InterruptedException {
+        long idleStartTime = System.currentTimeMillis();
         while (taskQueue.size() == 0) {
+            if (!isAlive) {
+                numThreads--;
+                metrics.poolSizeChanged(numThreads);
+                return null;
+            }
+            long waitTime = 0;
+            if (numThreads > coreThreads) {
+                waitTime = idleStartTime + keepAliveTime - System.currentTimeMillis();
+                if (waitTime <= 0) {
+                    // retire this idle thread
+                    numThreads--;
+                    metrics.poolSizeChanged(numThreads);
+                    return null;
+                }
+            }
+            idleThreads++;
+            try {
+                wait(waitTime);
+            } finally {
+                idleThreads--;
+            }
+        }
+        return removeFirstTask();
+    }
+
+    /**
+     * Starts up to count new task threads, staying within maxConcurrentTasks. Must be called while holding this
+     * ThreadPool's lock.
+     */
+    private void startTaskThreads(int count) {
+        for (int i = 0; i < count; i++) {
+            if (maxConcurrentTasks > 0 && taskThreads.size() >= maxConcurrentTasks) {
+                return;
+            }
+            Thread thread = taskThreadFactory.newThread(new TaskThreadBody());
+            taskThreads.add(thread);
+            metrics.poolSizeChanged(taskThreads.size());
+            thread.start();
+        }
+    }
+
+    /**
+     * Gets the next task for a task thread, or retires the thread if the queue is empty.
+     *
+     * @return the next task, or null if the calling task thread should exit.
+     */
+    private synchronized Runnable getTaskThreadTask() {
+        if (taskQueue.size() > 0) {
+            return removeFirstTask();
+        }
+        taskThreads.remove(Thread.currentThread());
+        metrics.poolSizeChanged(taskThreads.size());
+        if (taskThreads.isEmpty()) {
+            // wake join()
+            notifyAll();
+        }
+        return null;
+    }
+
+    /**
+     * Pushes a task without locking. Tasks submitted by a thread in this pool go to that thread's own deque;
+     * all other tasks go to the shared submission queue.
+     */
+    private void pushTask(Runnable task) {
+        PooledThread worker = currentWorker();
+        QueuedTask queuedTask = new QueuedTask(task);
+        if (worker != null) {
+            worker.deque.push(queuedTask);
+        } else {
+            submissionQueue.add(queuedTask);
+            // join() may have run since the isAlive check; make sure the task is either run or rejected
+            if (!isAlive && submissionQueue.remove(queuedTask)) {
+                throw new IllegalStateException();
+            }
+        }
+        metrics.taskSubmitted(1);
+        signalWork();
+    }
+
+    private void pushTasks(Collection<? extends Runnable> tasks) {
+        PooledThread worker = currentWorker();
+        int count = 0;
+        if (worker != null) {
+            for (Runnable task : tasks) {
+                if (task != null) {
+                    worker.deque.push(new QueuedTask(task));
+                    count++;
+                }
+            }
+        } else {
+            ArrayList<QueuedTask> batch = new ArrayList<QueuedTask>(tasks.size());
+            for (Runnable task : tasks) {
+                if (task != null) {
+                    batch.add(new QueuedTask(task));
+                }
+            }
+            submissionQueue.addAll(batch);
+            if (!isAlive && submissionQueue.removeAll(batch)) {
+                throw new IllegalStateException();
+            }
+            count = batch.size();
+        }
+        metrics.taskSubmitted(count);
+        for (int i = 0; i < count; i++) {
+            if (!signalWork()) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Wakes one parked thread, if any, so it can pick up or steal newly pushed work.
+     *
+     * @return true if a thread was woken, false if no thread was idle.
+     */
+    private boolean signalWork() {
+        PooledThread idle = idleWorkers.poll();
+        if (idle != null) {
+            LockSupport.unpark(idle);
+            return true;
+        }
+        return false;
+    }
+
+    private PooledThread currentWorker() {
+        Thread current = Thread.currentThread();
+        if (current instanceof PooledThread && current.getThreadGroup() == this) {
+            return (PooledThread) current;
+        }
+        return null;
+    }
+
+    /**
+     * Gets the next task for a thread in work-stealing mode, parking the thread while no work is available.
+     *
+     * @return the next task, or null if the thread should exit.
+     */
+    private Runnable getStealingTask(PooledThread worker) {
+        while (true) {
+            Runnable task = findTask(worker);
+            if (task != null) {
+                return task;
+            }
             if (!isAlive) {
                 return null;
             }
-            wait();
+
+            // announce this thread as idle, then look again so a concurrent push can't be missed
+            idleWorkers.add(worker);
+            task = findTask(worker);
+            if (task != null || !isAlive) {
+                idleWorkers.remove(worker);
+                return task;
+            }
+            LockSupport.park(this);
+            idleWorkers.remove(worker);
+            if (worker.isInterrupted()) {
+                return null;
+            }
+        }
+    }
+
+    private Runnable findTask(PooledThread worker) {
+        Runnable task = worker.deque.pop();
+        if (task == null) {
+            task = submissionQueue.poll();
+        }
+        if (task == null) {
+            task = stealTask(worker);
+        }
+        if (task == null) {
+            return null;
+        }
+        QueuedTask queuedTask = (QueuedTask) task;
+        metrics.taskDequeued(System.nanoTime() - queuedTask.queueTime);
+        return queuedTask.task;
+    }
+
+    private Runnable stealTask(PooledThread thief) {
+        int numWorkers = workers.length;
+        int start = thief.nextVictim;
+        thief.nextVictim = (start + 1) % numWorkers;
+        for (int i = 0; i < numWorkers; i++) {
+            PooledThread victim = workers[(start + i) % numWorkers];
+            if (victim != thief) {
+                TaskDeque deque = victim.deque;
+                while (deque.size() > 0) {
+                    Runnable task = deque.steal();
+                    if (task != null) {
+                        return task;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Runs a task on a thread of this pool, recording metrics, and eats any exception it throws. A TaskFuture whose
+     * task threw an exception counts as failed too.
+     */
+    private void executeTask(Thread thread, Runnable task) {
+        long startTime = metrics.taskStarted();
+        boolean failed = false;
+        try {
+            task.run();
+            // a TaskFuture keeps its task's exception for get() instead of throwing it
+            failed = task instanceof TaskFuture && ((TaskFuture<?>) task).isFailed();
+        } catch (Throwable t) {
+            failed = true;
+            uncaughtException(thread, t);
+        } finally {
+            metrics.taskFinished(startTime, failed);
+        }
+    }
+
+    /**
+     * Takes a snapshot of this ThreadPool's metrics. Reading the counters doesn't block task submission or
+     * execution.
+     *
+     * @return the current ThreadPoolStats.
+     */
+    public ThreadPoolStats getStats() {
+        int queueDepth;
+        if (workStealing) {
+            queueDepth = submissionQueue.size();
+            for (PooledThread worker : workers) {
+                queueDepth += worker.deque.size();
+            }
+        } else {
+            queueDepth = metrics.queueDepth.get();
+        }
+        return new ThreadPoolStats(queueDepth, metrics.poolSize.get(), metrics);
+    }
+
+    /**
+     * Registers this ThreadPool's metrics with the platform MBean server as a ThreadPoolMXBean named
+     * "com.brackeen.jdb.generic:type=ThreadPool,name=&lt;thread group name&gt;".
+     *
+     * @return the ObjectName of the registered MBean.
+     * @throws JMException if the MBean could not be registered.
+     */
+    public synchronized ObjectName registerMBean() throws JMException {
+        if (mbeanName == null) {
+            ObjectName name = new ObjectName("com.brackeen.jdb.generic:type=ThreadPool,name=" + getName());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new PoolMXBean(), name);
+            mbeanName = name;
+        }
+        return mbeanName;
+    }
+
+    /**
+     * Unregisters this ThreadPool's MBean, if registered.
+     *
+     * @throws JMException if the MBean could not be unregistered.
+     */
+    public synchronized void unregisterMBean() throws JMException {
+        if (mbeanName != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+            mbeanName = null;
         }
-        return taskQueue.removeFirst();
     }
 
     /**
@@ -65,7 +960,20 @@ public class ThreadPool extends ThreadGroup {
         if (isAlive) {
             isAlive = false;
             taskQueue.clear();
+            // wake producers blocked on a full queue
+            notifyAll();
+            if (workStealing) {
+                submissionQueue.clear();
+                for (PooledThread worker : workers) {
+                    worker.deque.clear();
+                }
+            }
             interrupt();
+            if (taskThreadFactory != null) {
+                for (Thread thread : taskThreads) {
+                    thread.interrupt();
+                }
+            }
         }
     }
 
@@ -78,6 +986,23 @@ public class ThreadPool extends ThreadGroup {
             isAlive = false;
             notifyAll();
         }
+        if (workStealing) {
+            for (PooledThread worker : workers) {
+                LockSupport.unpark(worker);
+            }
+        }
+
+        // wait for all task threads to finish; they may be virtual threads, which are not in this group
+        if (taskThreadFactory != null) {
+            synchronized (this) {
+                while (!taskThreads.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+            }
+        }
 
         // wait for all threads to finish
         Thread[] threads = new Thread[activeCount()];
@@ -95,32 +1020,145 @@ public class ThreadPool extends ThreadGroup {
      */
     private class PooledThread extends Thread {
 
-        public PooledThread() {
+        // work-stealing mode only
+        private TaskDeque deque;
+        private int nextVictim;
+
+        public PooledThread(int index) {
             super(ThreadPool.this, "PooledThread-" + (threadID++));
+            if (workStealing) {
+                deque = new TaskDeque();
+                nextVictim = index + 1;
+            }
         }
 
         public void run() {
+            if (!workStealing) {
+                threadStarted();
+            }
             while (!isInterrupted()) {
 
                 //get a task to run
                 Runnable task = null;
-                try {
-                    task = getTask();
-                } catch (InterruptedException ignored) {
+                if (workStealing) {
+                    task = getStealingTask(this);
+                } else {
+                    try {
+                        task = getTask();
+                    } catch (InterruptedException ignored) {
+                    }
                 }
 
                 // if getTask() returned null or was interrupted, close this thread by returning
                 if (task == null) {
-                    return;
+                    break;
                 }
 
-                //run the task, and eat any exceptions it throws
-                try {
-                    task.run();
-                } catch (Throwable t) {
-                    uncaughtException(this, t);
-                }
+                executeTask(this, task);
             }
+            if (workStealing) {
+                metrics.poolSize.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Runs queued tasks on a task thread until the queue is empty.
+     */
+    private class TaskThreadBody implements Runnable {
+
+        public void run() {
+            Thread thread = Thread.currentThread();
+            Runnable task;
+            while ((task = getTaskThreadTask()) != null) {
+                executeTask(thread, task);
+            }
+        }
+    }
+
+    /**
+     * Creates daemon task threads in this ThreadPool's group when virtual threads are not supported.
+     */
+    private class PlatformThreadFactory implements ThreadFactory {
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(ThreadPool.this, r, "PooledThread-" + (threadID++));
+            // a new thread inherits the daemon status of the thread creating it
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * A task waiting in a work-stealing deque or the submission queue, with the time it was queued so its queue
+     * wait can be recorded when a thread takes it.
+     */
+    private static class QueuedTask implements Runnable {
+
+        final Runnable task;
+        final long queueTime;
+
+        public QueuedTask(Runnable task) {
+            this.task = task;
+            queueTime = System.nanoTime();
+        }
+
+        public void run() {
+            task.run();
+        }
+    }
+
+    /**
+     * Exposes the metrics of this ThreadPool over JMX.
+     */
+    private class PoolMXBean implements ThreadPoolMXBean {
+
+        public int getQueueDepth() {
+            return getStats().getQueueDepth();
+        }
+
+        public int getPoolSize() {
+            return getStats().getPoolSize();
+        }
+
+        public int getActiveThreads() {
+            return metrics.activeThreads.get();
+        }
+
+        public long getTasksSubmitted() {
+            return metrics.tasksSubmitted.get();
+        }
+
+        public long getTasksCompleted() {
+            return metrics.tasksCompleted.get();
+        }
+
+        public long getTasksFailed() {
+            return metrics.tasksFailed.get();
+        }
+
+        public long getTasksRejected() {
+            return metrics.tasksRejected.get();
+        }
+
+        public long getTasksRemoved() {
+            return metrics.tasksRemoved.get();
+        }
+
+        public long getQueueWaitMedianMicros() {
+            return LatencyHistogram.getPercentile(metrics.queueWaitTimes.getCounts(), 50);
+        }
+
+        public long getQueueWait99thPercentileMicros() {
+            return LatencyHistogram.getPercentile(metrics.queueWaitTimes.getCounts(), 99);
+        }
+
+        public long getRunTimeMedianMicros() {
+            return LatencyHistogram.getPercentile(metrics.runTimes.getCounts(), 50);
+        }
+
+        public long getRunTime99thPercentileMicros() {
+            return LatencyHistogram.getPercentile(metrics.runTimes.getCounts(), 99);
         }
     }
 }
@@ -0,0 +1,32 @@
+package com.brackeen.jdb.generic;
+
+/**
+ * The JMX management interface of a ThreadPool, registered with ThreadPool.registerMBean(). Each attribute is read
+ * live from the pool's metrics; see ThreadPoolStats for their meaning.
+ */
+public interface ThreadPoolMXBean {
+
+    int getQueueDepth();
+
+    int getPoolSize();
+
+    int getActiveThreads();
+
+    long getTasksSubmitted();
+
+    long getTasksCompleted();
+
+    long getTasksFailed();
+
+    long getTasksRejected();
+
+    long getTasksRemoved();
+
+    long getQueueWaitMedianMicros();
+
+    long getQueueWait99thPercentileMicros();
+
+    long getRunTimeMedianMicros();
+
+    long getRunTime99thPercentileMicros();
+}
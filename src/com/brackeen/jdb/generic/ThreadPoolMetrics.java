@@ -0,0 +1,114 @@
+package com.brackeen.jdb.generic;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ThreadPoolMetrics collects the counters of a ThreadPool. All methods are lock-free, so they can be called on the
+ * task submission and execution paths.
+ */
+class ThreadPoolMetrics {
+
+    final AtomicLong tasksSubmitted;
+    final AtomicLong tasksCompleted;
+    final AtomicLong tasksFailed;
+    final AtomicLong tasksRejected;
+    final AtomicLong tasksRemoved;
+    final AtomicInteger activeThreads;
+    final AtomicInteger queueDepth;
+    final AtomicInteger poolSize;
+    final LatencyHistogram queueWaitTimes;
+    final LatencyHistogram runTimes;
+
+    /**
+     * Creates a new ThreadPoolMetrics with all counters at zero.
+     */
+    public ThreadPoolMetrics() {
+        tasksSubmitted = new AtomicLong();
+        tasksCompleted = new AtomicLong();
+        tasksFailed = new AtomicLong();
+        tasksRejected = new AtomicLong();
+        tasksRemoved = new AtomicLong();
+        activeThreads = new AtomicInteger();
+        queueDepth = new AtomicInteger();
+        poolSize = new AtomicInteger();
+        queueWaitTimes = new LatencyHistogram();
+        runTimes = new LatencyHistogram();
+    }
+
+    /**
+     * Counts tasks accepted into the pool.
+     *
+     * @param count the number of tasks
+     */
+    public void taskSubmitted(int count) {
+        tasksSubmitted.addAndGet(count);
+    }
+
+    /**
+     * Counts a task that was dropped, or run by the submitting thread, because the queue was full.
+     */
+    public void taskRejected() {
+        tasksRejected.incrementAndGet();
+    }
+
+    /**
+     * Counts a queued task taken back before any thread started it, by a cancel or by invoke() and parallelFor().
+     */
+    public void taskRemoved() {
+        tasksRemoved.incrementAndGet();
+    }
+
+    /**
+     * Records the number of tasks waiting in the queue, whenever it changes.
+     *
+     * @param depth the number of waiting tasks
+     */
+    public void queueDepthChanged(int depth) {
+        queueDepth.set(depth);
+    }
+
+    /**
+     * Records the number of threads in the pool, whenever it changes.
+     *
+     * @param size the number of threads
+     */
+    public void poolSizeChanged(int size) {
+        poolSize.set(size);
+    }
+
+    /**
+     * Records the time a task waited in the queue before a thread took it.
+     *
+     * @param nanos the wait time in nanoseconds
+     */
+    public void taskDequeued(long nanos) {
+        queueWaitTimes.record(nanos);
+    }
+
+    /**
+     * Marks the calling thread as running a task.
+     *
+     * @return the start time in nanoseconds, to pass to taskFinished().
+     */
+    public long taskStarted() {
+        activeThreads.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * Marks the calling thread as no longer running a task, and records the task's run time.
+     *
+     * @param startTime the value returned by taskStarted()
+     * @param failed    true if the task threw an exception
+     */
+    public void taskFinished(long startTime, boolean failed) {
+        runTimes.record(System.nanoTime() - startTime);
+        activeThreads.decrementAndGet();
+        if (failed) {
+            tasksFailed.incrementAndGet();
+        } else {
+            tasksCompleted.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.brackeen.jdb.generic;
+
+/**
+ * A ThreadPoolStats is a snapshot of the metrics of a ThreadPool, as returned by ThreadPool.getStats().
+ * <p>Counters are read one at a time without stopping the pool, so a snapshot of a busy pool may be slightly
+ * inconsistent, for example a task counted as completed but not yet as submitted.</p>
+ */
+public class ThreadPoolStats {
+
+    private final int queueDepth;
+    private final int poolSize;
+    private final int activeThreads;
+    private final long tasksSubmitted;
+    private final long tasksCompleted;
+    private final long tasksFailed;
+    private final long tasksRejected;
+    private final long tasksRemoved;
+    private final long[] queueWaitCounts;
+    private final long[] runTimeCounts;
+
+    ThreadPoolStats(int queueDepth, int poolSize, ThreadPoolMetrics metrics) {
+        this.queueDepth = queueDepth;
+        this.poolSize = poolSize;
+        activeThreads = metrics.activeThreads.get();
+        tasksSubmitted = metrics.tasksSubmitted.get();
+        tasksCompleted = metrics.tasksCompleted.get();
+        tasksFailed = metrics.tasksFailed.get();
+        tasksRejected = metrics.tasksRejected.get();
+        tasksRemoved = metrics.tasksRemoved.get();
+        queueWaitCounts = metrics.queueWaitTimes.getCounts();
+        runTimeCounts = metrics.runTimes.getCounts();
+    }
+
+    /**
+     * Gets the number of tasks waiting to run.
+     *
+     * @return the queue depth.
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * Gets the number of threads in the pool, busy or idle.
+     *
+     * @return the pool size.
+     */
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * Gets the number of threads running a task.
+     *
+     * @return the number of active threads.
+     */
+    public int getActiveThreads() {
+        return activeThreads;
+    }
+
+    /**
+     * Gets the number of tasks accepted into the pool, not counting rejected tasks.
+     *
+     * @return the number of submitted tasks.
+     */
+    public long getTasksSubmitted() {
+        return tasksSubmitted;
+    }
+
+    /**
+     * Gets the number of tasks that ran to completion.
+     *
+     * @return the number of completed tasks.
+     */
+    public long getTasksCompleted() {
+        return tasksCompleted;
+    }
+
+    /**
+     * Gets the number of tasks that threw an exception, which was passed to uncaughtException().
+     *
+     * @return the number of failed tasks.
+     */
+    public long getTasksFailed() {
+        return tasksFailed;
+    }
+
+    /**
+     * Gets the number of tasks dropped, or run by the submitting thread, because the queue was full.
+     *
+     * @return the number of rejected tasks.
+     */
+    public long getTasksRejected() {
+        return tasksRejected;
+    }
+
+    /**
+     * Gets the number of queued tasks taken back before any pool thread started them, either because they were
+     * cancelled or because invoke() or parallelFor() ran them on the calling thread.
+     *
+     * @return the number of removed tasks.
+     */
+    public long getTasksRemoved() {
+        return tasksRemoved;
+    }
+
+    /**
+     * Gets the histogram of the time tasks waited in the queue. Bucket 0 counts waits under 1 microsecond, and
+     * bucket i counts waits from 2^(i-1) up to 2^i microseconds.
+     *
+     * @return a copy of the bucket counts.
+     */
+    public long[] getQueueWaitHistogram() {
+        return queueWaitCounts.clone();
+    }
+
+    /**
+     * Gets the histogram of task run times, with the same buckets as getQueueWaitHistogram().
+     *
+     * @return a copy of the bucket counts.
+     */
+    public long[] getRunTimeHistogram() {
+        return runTimeCounts.clone();
+    }
+
+    /**
+     * Estimates a percentile of the time tasks waited in the queue.
+     *
+     * @param percentile the percentile, from 0 to 100
+     * @return the wait time in microseconds, rounded up to a power of two, or 0 if nothing was recorded.
+     */
+    public long getQueueWaitPercentile(double percentile) {
+        return LatencyHistogram.getPercentile(queueWaitCounts, percentile);
+    }
+
+    /**
+     * Estimates a percentile of task run times.
+     *
+     * @param percentile the percentile, from 0 to 100
+     * @return the run time in microseconds, rounded up to a power of two, or 0 if nothing was recorded.
+     */
+    public long getRunTimePercentile(double percentile) {
+        return LatencyHistogram.getPercentile(runTimeCounts, percentile);
+    }
+
+    @Override
+    public String toString() {
+        return "queued=" + queueDepth + " threads=" + poolSize + " active=" + activeThreads +
+                " submitted=" + tasksSubmitted + " completed=" + tasksCompleted + " failed=" + tasksFailed +
+                " rejected=" + tasksRejected + " removed=" + tasksRemoved +
+                " wait.p99=" + getQueueWaitPercentile(99) + "us" + " run.p99=" + getRunTimePercentile(99) + "us";
+    }
+}
@@ -1,27 +1,41 @@
 package com.brackeen.jdb.generic.test;
 
 import com.brackeen.jdb.generic.ThreadPool;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 
 public class ThreadPoolTest {
 
     public static void main(String[] args) {
-        if (args.length != 2) {
+        if (args.length < 2 || args.length > 4) {
             System.out.println("Tests the ThreadPool task.");
-            System.out.println("Usage: java ThreadPoolTest <numTasks> <numThreads>");
+            System.out.println("Usage: java ThreadPoolTest <numTasks> <numThreads> [workStealing] [batch]");
             System.out.println("   numTasks - integer: number of tasks to run.");
             System.out.println("   numThreads - integer: number of threads in the ThreadPool.");
+            System.out.println("   workStealing - boolean: true to use per-thread work-stealing deques.");
+            System.out.println("   batch - boolean: true to submit all tasks in a single batch.");
             return;
         }
         int numTasks = Integer.parseInt(args[0]);
         int numThreads = Integer.parseInt(args[1]);
+        boolean workStealing = args.length >= 3 && Boolean.parseBoolean(args[2]);
+        boolean batch = args.length == 4 && Boolean.parseBoolean(args[3]);
 
         // create the thread pool
-        ThreadPool threadPool = new ThreadPool(numThreads);
+        ThreadPool threadPool = new ThreadPool(numThreads, workStealing);
 
         // run example tasks
-        for (int i=0; i<numTasks; i++) {
-            threadPool.runTask(createTask(i));
+        if (batch) {
+            List<Runnable> tasks = new ArrayList<Runnable>(numTasks);
+            for (int i=0; i<numTasks; i++) {
+                tasks.add(createTask(i));
+            }
+            threadPool.runTasks(tasks);
+        } else {
+            for (int i=0; i<numTasks; i++) {
+                threadPool.runTask(createTask(i));
+            }
         }
 
         // close the pool and wait for all tasks to finish
@@ -2,13 +2,32 @@ package com.brackeen.jdb.graphics;
 
 import java.awt.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * The Animation class manages a series of images (frames) and the amount of time to display each frame.
  */
 public class Animation {
 
+    /**
+     * An ImageSource provides a frame image when the frame is first shown, so frames can be added to an Animation
+     * before their images are decoded.
+     */
+    public interface ImageSource {
+
+        /**
+         * Gets the frame image. Called at most once per frame.
+         *
+         * @return the frame image
+         */
+        Image getImage();
+    }
+
     private ArrayList<AnimFrame> frames;
+    // end times of the frames, for searching without dereferencing each AnimFrame
+    private long[] endTimes;
+    // the duration shared by all frames, or -1 if the durations differ
+    private long uniformDuration;
     private int currFrameIndex;
     private long animTime;
     private long totalDuration;
@@ -18,6 +37,8 @@ public class Animation {
      */
     public Animation() {
         frames = new ArrayList<AnimFrame>();
+        endTimes = new long[8];
+        uniformDuration = -1;
         totalDuration = 0;
         start();
     }
@@ -29,8 +50,41 @@ public class Animation {
      * @param duration as the amount of time to display the frame
      */
     public synchronized void addFrame(Image image, long duration) {
+        addFrame(image, null, null, duration);
+    }
+
+    /**
+     * Adds a frame to the animation whose image is got from an ImageSource the first time the frame is shown.
+     *
+     * @param source   to provide the frame image
+     * @param duration as the amount of time to display the frame
+     */
+    public synchronized void addFrame(ImageSource source, long duration) {
+        addFrame(null, source, null, duration);
+    }
+
+    /**
+     * Adds a TextureAtlas region to the animation with the specified duration.
+     *
+     * @param region   to be added to the Animation
+     * @param duration as the amount of time to display the frame
+     */
+    public synchronized void addFrame(TextureAtlas.Region region, long duration) {
+        addFrame(region.getImage(), null, region, duration);
+    }
+
+    private void addFrame(Image image, ImageSource source, TextureAtlas.Region region, long duration) {
+        if (frames.size() == 0) {
+            uniformDuration = duration;
+        } else if (duration != uniformDuration) {
+            uniformDuration = -1;
+        }
         totalDuration += duration;
-        frames.add(new AnimFrame(image, totalDuration));
+        if (frames.size() == endTimes.length) {
+            endTimes = Arrays.copyOf(endTimes, endTimes.length * 2);
+        }
+        endTimes[frames.size()] = totalDuration;
+        frames.add(new AnimFrame(image, source, region, totalDuration));
     }
 
     /**
@@ -42,7 +96,8 @@ public class Animation {
     }
 
     /**
-     * Updates this animation's current image (frame), if necessary.
+     * Updates this animation's current image (frame), if necessary. Takes constant time for animations whose frames
+     * all have the same duration, and logarithmic time otherwise, however large elapsedTime is.
      *
      * @param elapsedTime as time in milliseconds since last update() call
      */
@@ -54,9 +109,34 @@ public class Animation {
                 currFrameIndex = 0;
             }
 
-            while (animTime > getFrame(currFrameIndex).endTime) {
-                currFrameIndex++;
-            }
+            currFrameIndex = AnimationClip.findFrame(endTimes, frames.size(), uniformDuration, currFrameIndex,
+                    animTime);
+        }
+    }
+
+    /**
+     * Creates an immutable AnimationClip with the frames of this Animation, which many Sprites can share.
+     *
+     * @return a new AnimationClip with this Animation's frames.
+     */
+    public synchronized AnimationClip getClip() {
+        Image[] images = new Image[frames.size()];
+        TextureAtlas.Region[] regions = new TextureAtlas.Region[frames.size()];
+        boolean allRegions = true;
+        long[] durations = new long[frames.size()];
+        long startTime = 0;
+        for (int i = 0; i < images.length; i++) {
+            AnimFrame frame = getFrame(i);
+            images[i] = frame.getImage();
+            regions[i] = frame.region;
+            allRegions &= frame.region != null;
+            durations[i] = frame.endTime - startTime;
+            startTime = frame.endTime;
+        }
+        if (allRegions) {
+            return new AnimationClip(regions, durations);
+        } else {
+            return new AnimationClip(images, durations);
         }
     }
 
@@ -69,7 +149,20 @@ public class Animation {
         if (frames.size() == 0) {
             return null;
         } else {
-            return getFrame(currFrameIndex).image;
+            return getFrame(currFrameIndex).getImage();
+        }
+    }
+
+    /**
+     * Get this Animation's current frame region, if the frame was added as a TextureAtlas region.
+     *
+     * @return current frame region or null if the Animation has no frames or the frame is not an atlas region.
+     */
+    public synchronized TextureAtlas.Region getRegion() {
+        if (frames.size() == 0) {
+            return null;
+        } else {
+            return getFrame(currFrameIndex).region;
         }
     }
 
@@ -80,11 +173,23 @@ public class Animation {
     private class AnimFrame {
 
         Image image;
+        ImageSource source;
+        TextureAtlas.Region region;
         long endTime;
 
-        public AnimFrame(Image image, long endTime) {
+        public AnimFrame(Image image, ImageSource source, TextureAtlas.Region region, long endTime) {
             this.image = image;
+            this.source = source;
+            this.region = region;
             this.endTime = endTime;
         }
+
+        public Image getImage() {
+            if (image == null) {
+                image = source.getImage();
+                source = null;
+            }
+            return image;
+        }
     }
 }
@@ -0,0 +1,186 @@
+package com.brackeen.jdb.graphics;
+
+import java.awt.*;
+
+/**
+ * The AnimationClip class is an immutable series of images (frames) and the amount of time to display each frame.
+ * Unlike an Animation, an AnimationClip has no playback position, so any number of Sprites can share one clip
+ * without locking; each Sprite keeps its own animation time.
+ */
+public class AnimationClip {
+
+    private final Image[] images;
+    // the atlas regions of the frames, or null if the frames are separate images
+    private final TextureAtlas.Region[] regions;
+    private final long[] endTimes;
+    // the duration shared by all frames, or -1 if the durations differ
+    private final long uniformDuration;
+    private final long totalDuration;
+
+    /**
+     * Creates a new AnimationClip.
+     *
+     * @param images    the frame images, in order
+     * @param durations the amount of time to display each frame, in milliseconds
+     * @throws IllegalArgumentException if the arrays have different lengths.
+     */
+    public AnimationClip(Image[] images, long[] durations) {
+        this(images.clone(), null, durations);
+    }
+
+    /**
+     * Creates a new AnimationClip whose frames are regions of a TextureAtlas.
+     *
+     * @param regions   the frame regions, in order
+     * @param durations the amount of time to display each frame, in milliseconds
+     * @throws IllegalArgumentException if the arrays have different lengths.
+     */
+    public AnimationClip(TextureAtlas.Region[] regions, long[] durations) {
+        this(imagesOf(regions), regions.clone(), durations);
+    }
+
+    private AnimationClip(Image[] images, TextureAtlas.Region[] regions, long[] durations) {
+        if (images.length != durations.length) {
+            throw new IllegalArgumentException();
+        }
+        this.images = images;
+        this.regions = regions;
+        endTimes = new long[durations.length];
+        long total = 0;
+        long uniform = durations.length > 0 ? durations[0] : -1;
+        for (int i = 0; i < durations.length; i++) {
+            total += durations[i];
+            endTimes[i] = total;
+            if (durations[i] != uniform) {
+                uniform = -1;
+            }
+        }
+        uniformDuration = uniform;
+        totalDuration = total;
+    }
+
+    /**
+     * Gets the number of frames in this clip.
+     *
+     * @return the number of frames
+     */
+    public int getNumFrames() {
+        return images.length;
+    }
+
+    /**
+     * Gets the total duration of this clip.
+     *
+     * @return the sum of the frame durations, in milliseconds
+     */
+    public long getTotalDuration() {
+        return totalDuration;
+    }
+
+    /**
+     * Gets the index of the frame shown at the specified animation time. The clip loops, so times past the total
+     * duration wrap around.
+     *
+     * @param animTime time in milliseconds since the start of the animation
+     * @return the frame index, or -1 if this clip has no frames.
+     */
+    public int getFrameIndex(long animTime) {
+        if (images.length <= 1) {
+            return images.length - 1;
+        }
+        if (animTime >= totalDuration) {
+            animTime = animTime % totalDuration;
+        }
+        return findFrame(endTimes, images.length, uniformDuration, 0, animTime);
+    }
+
+    /**
+     * Gets the image shown at the specified animation time.
+     *
+     * @param animTime time in milliseconds since the start of the animation
+     * @return frame image, or null if this clip has no frames.
+     */
+    public Image getImage(long animTime) {
+        int index = getFrameIndex(animTime);
+        return index < 0 ? null : images[index];
+    }
+
+    /**
+     * Gets the image of a frame.
+     *
+     * @param index the frame index
+     * @return the frame image
+     */
+    public Image getFrameImage(int index) {
+        return images[index];
+    }
+
+    /**
+     * Gets the atlas region shown at the specified animation time.
+     *
+     * @param animTime time in milliseconds since the start of the animation
+     * @return frame region, or null if this clip has no frames or its frames are not atlas regions.
+     */
+    public TextureAtlas.Region getRegion(long animTime) {
+        if (regions == null) {
+            return null;
+        }
+        int index = getFrameIndex(animTime);
+        return index < 0 ? null : regions[index];
+    }
+
+    /**
+     * Gets the atlas region of a frame.
+     *
+     * @param index the frame index
+     * @return the frame region, or null if the frames of this clip are not atlas regions.
+     */
+    public TextureAtlas.Region getFrameRegion(int index) {
+        return regions == null ? null : regions[index];
+    }
+
+    private static Image[] imagesOf(TextureAtlas.Region[] regions) {
+        Image[] images = new Image[regions.length];
+        for (int i = 0; i < regions.length; i++) {
+            images[i] = regions[i].getImage();
+        }
+        return images;
+    }
+
+    /**
+     * Finds the first frame, starting at the specified frame, that is still showing at the specified time: the first
+     * frame whose end time is at or after the time. Takes constant time if all frames have the same duration, and
+     * logarithmic time otherwise.
+     *
+     * @param endTimes        cumulative end times of the frames
+     * @param numFrames       the number of frames
+     * @param uniformDuration the duration shared by all frames, or -1 if the durations differ
+     * @param fromIndex       the frame to start searching at
+     * @param time            the animation time, less than the total duration
+     * @return the frame index
+     */
+    static int findFrame(long[] endTimes, int numFrames, long uniformDuration, int fromIndex, long time) {
+        int lastIndex = numFrames - 1;
+        if (time <= endTimes[fromIndex]) {
+            return fromIndex;
+        }
+        if (uniformDuration > 0) {
+            // frame i ends at (i + 1) * uniformDuration
+            long index = (time + uniformDuration - 1) / uniformDuration - 1;
+            return (int) Math.min(index, lastIndex);
+        }
+
+        // binary search for the first end time >= time
+        int low = fromIndex + 1;
+        int high = lastIndex;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (endTimes[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,305 @@
+package com.brackeen.jdb.graphics;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * The AssetPack class reads images from an asset pack: one file holding many images, written by AssetPacker. The
+ * pack is memory-mapped, so opening it reads only its table of contents, and each image is decoded the first time it
+ * is asked for.
+ * <p>The pack format (all numbers big-endian) is:</p>
+ * <pre>
+ * int      magic (JDBP)
+ * int      version (1)
+ * int      number of entries
+ * entries  for each image:
+ *            short + bytes  name (UTF-8)
+ *            byte           format (0 = encoded image file, 1 = raw ARGB pixels)
+ *            int, int       width, height
+ *            long, int      offset and length of the image data
+ * data     the image data
+ * </pre>
+ * <p>Decoded images are ordinary BufferedImages; use ScreenManager.createManagedImage() to make them compatible with
+ * the display. An AssetPack is thread-safe.</p>
+ */
+public class AssetPack {
+
+    static final int MAGIC = 0x4A444250;
+    static final int VERSION = 1;
+    static final byte FORMAT_ENCODED = 0;
+    static final byte FORMAT_RAW = 1;
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private ByteBuffer buffer;
+    private LinkedHashMap<String, Entry> entries;
+
+    /**
+     * Opens an asset pack and reads its table of contents.
+     *
+     * @param file the asset pack file
+     * @throws IOException if the file can't be read or is not an asset pack.
+     */
+    public AssetPack(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            // the mapping stays valid after the channel is closed
+            FileChannel channel = in.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            in.close();
+        }
+
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not an asset pack: " + file);
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported asset pack version " + version + ": " + file);
+            }
+            int numEntries = buffer.getInt();
+            entries = new LinkedHashMap<String, Entry>();
+            for (int i = 0; i < numEntries; i++) {
+                byte[] nameBytes = new byte[buffer.getShort() & 0xffff];
+                buffer.get(nameBytes);
+                String name = new String(nameBytes, UTF_8);
+                byte format = buffer.get();
+                int width = buffer.getInt();
+                int height = buffer.getInt();
+                long offset = buffer.getLong();
+                int length = buffer.getInt();
+                if (width <= 0 || height <= 0 || offset < 0 || offset > Integer.MAX_VALUE || length < 0 ||
+                        offset + length > buffer.capacity()) {
+                    throw new IOException("Corrupt asset pack entry " + name + ": " + file);
+                }
+                entries.put(name, new Entry(name, format, width, height, (int) offset, length));
+            }
+        } catch (BufferUnderflowException ex) {
+            throw new IOException("Truncated asset pack: " + file);
+        }
+    }
+
+    /**
+     * Gets the names of the images in this pack, in the order they were packed.
+     *
+     * @return unmodifiable list of image names
+     */
+    public List<String> getNames() {
+        return Collections.unmodifiableList(new ArrayList<String>(entries.keySet()));
+    }
+
+    /**
+     * Checks whether this pack holds an image.
+     *
+     * @param name the image name
+     * @return true if the image is in this pack.
+     */
+    public boolean contains(String name) {
+        return entries.containsKey(name);
+    }
+
+    /**
+     * Gets the entry of an image, which knows the image size without decoding it.
+     *
+     * @param name the image name
+     * @return the image's Entry
+     * @throws IllegalArgumentException if the image is not in this pack.
+     */
+    public Entry getEntry(String name) {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            throw new IllegalArgumentException("No such image: " + name);
+        }
+        return entry;
+    }
+
+    /**
+     * Gets an image, decoding it if this is the first time it is asked for.
+     *
+     * @param name the image name
+     * @return the image
+     * @throws IOException              if the image data can't be decoded.
+     * @throws IllegalArgumentException if the image is not in this pack.
+     */
+    public BufferedImage getImage(String name) throws IOException {
+        return getEntry(name).decode();
+    }
+
+    /**
+     * Creates an Animation of images in this pack. Each frame is decoded the first time it is shown.
+     *
+     * @param names     the frame image names, in order
+     * @param durations the amount of time to display each frame, in milliseconds
+     * @return a new Animation
+     * @throws IllegalArgumentException if the arrays have different lengths or an image is not in this pack.
+     */
+    public Animation createAnimation(String[] names, long[] durations) {
+        if (names.length != durations.length) {
+            throw new IllegalArgumentException();
+        }
+        Animation anim = new Animation();
+        for (int i = 0; i < names.length; i++) {
+            anim.addFrame(getEntry(names[i]), durations[i]);
+        }
+        return anim;
+    }
+
+    /**
+     * An Entry is an image in an AssetPack. As an Animation.ImageSource, it decodes its image when an Animation
+     * first shows it.
+     */
+    public class Entry implements Animation.ImageSource {
+
+        private final String name;
+        private final byte format;
+        private final int width;
+        private final int height;
+        private final int offset;
+        private final int length;
+        private BufferedImage image;
+
+        private Entry(String name, byte format, int width, int height, int offset, int length) {
+            this.name = name;
+            this.format = format;
+            this.width = width;
+            this.height = height;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        /**
+         * Gets the name of this image in the pack.
+         *
+         * @return the image name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the width of this image, without decoding it.
+         *
+         * @return width of the image
+         */
+        public int getWidth() {
+            return width;
+        }
+
+        /**
+         * Gets the height of this image, without decoding it.
+         *
+         * @return height of the image
+         */
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * Checks whether the image has been decoded.
+         *
+         * @return true if the image has been decoded.
+         */
+        public synchronized boolean isDecoded() {
+            return image != null;
+        }
+
+        /**
+         * Gets the image, decoding it if this is the first time it is asked for.
+         *
+         * @return the image
+         * @throws IllegalStateException if the image data can't be decoded.
+         */
+        @Override
+        public Image getImage() {
+            try {
+                return decode();
+            } catch (IOException ex) {
+                throw new IllegalStateException("Can't decode " + name, ex);
+            }
+        }
+
+        synchronized BufferedImage decode() throws IOException {
+            if (image == null) {
+                // each decode reads its own view of the mapped pack
+                ByteBuffer data = buffer.duplicate();
+                data.position(offset);
+                data.limit(offset + length);
+                data = data.slice();
+                if (format == FORMAT_RAW) {
+                    image = decodeRaw(data);
+                } else if (format == FORMAT_ENCODED) {
+                    image = ImageIO.read(new ByteBufferInputStream(data));
+                    if (image == null) {
+                        throw new IOException("Unsupported image format: " + name);
+                    }
+                } else {
+                    throw new IOException("Unknown format " + format + ": " + name);
+                }
+            }
+            return image;
+        }
+
+        private BufferedImage decodeRaw(ByteBuffer data) throws IOException {
+            if (length != (long) width * height * 4) {
+                throw new IOException("Corrupt raw image: " + name);
+            }
+            BufferedImage raw = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            IntBuffer pixels = data.asIntBuffer();
+            int[] row = new int[width];
+            for (int y = 0; y < height; y++) {
+                pixels.get(row);
+                raw.getRaster().setDataElements(0, y, width, 1, row);
+            }
+            return raw;
+        }
+    }
+
+    /**
+     * An InputStream that reads the remaining bytes of a ByteBuffer.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+
+        private ByteBuffer buffer;
+
+        public ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.brackeen.jdb.graphics;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The AssetPacker class builds an asset pack, read by AssetPack, from a directory of image files. Each image is
+ * stored under its file name, either as the original encoded file (small, decoded when loaded) or, with -raw, as
+ * ARGB pixels (larger, but only copied when loaded).
+ * <p>Usage: java com.brackeen.jdb.graphics.AssetPacker [-raw] directory output</p>
+ */
+public class AssetPacker {
+
+    public static void main(String[] args) throws IOException {
+        boolean raw = false;
+        List<String> paths = new ArrayList<String>();
+        for (String arg : args) {
+            if (arg.equals("-raw")) {
+                raw = true;
+            } else {
+                paths.add(arg);
+            }
+        }
+        if (paths.size() != 2) {
+            System.out.println("Usage: java " + AssetPacker.class.getName() + " [-raw] directory output");
+            System.exit(1);
+        }
+        int count = pack(new File(paths.get(0)), new File(paths.get(1)), raw);
+        System.out.println("Packed " + count + " images into " + paths.get(1));
+    }
+
+    /**
+     * Packs every image file in a directory that ImageIO can read, in file name order. Other files are skipped.
+     *
+     * @param dir    the directory of image files
+     * @param output the asset pack file to write
+     * @param raw    true to store ARGB pixels, false to store the encoded files
+     * @return the number of images packed
+     * @throws IOException if a file can't be read or the pack can't be written.
+     */
+    public static int pack(File dir, File output, boolean raw) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            throw new IOException("Not a directory: " + dir);
+        }
+        Arrays.sort(files);
+
+        List<String> names = new ArrayList<String>();
+        List<BufferedImage> images = new ArrayList<BufferedImage>();
+        List<byte[]> data = new ArrayList<byte[]>();
+        for (File file : files) {
+            if (!file.isFile()) {
+                continue;
+            }
+            BufferedImage image = ImageIO.read(file);
+            if (image == null) {
+                continue;
+            }
+            names.add(file.getName());
+            images.add(image);
+            data.add(raw ? toRawPixels(image) : readFile(file));
+        }
+
+        // the size of the header and table of contents, so entry offsets are known before writing
+        long offset = 12;
+        for (String name : names) {
+            offset += 2 + name.getBytes(AssetPack.UTF_8).length + 1 + 4 + 4 + 8 + 4;
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(output)));
+        try {
+            out.writeInt(AssetPack.MAGIC);
+            out.writeInt(AssetPack.VERSION);
+            out.writeInt(names.size());
+            for (int i = 0; i < names.size(); i++) {
+                byte[] nameBytes = names.get(i).getBytes(AssetPack.UTF_8);
+                out.writeShort(nameBytes.length);
+                out.write(nameBytes);
+                out.writeByte(raw ? AssetPack.FORMAT_RAW : AssetPack.FORMAT_ENCODED);
+                out.writeInt(images.get(i).getWidth());
+                out.writeInt(images.get(i).getHeight());
+                out.writeLong(offset);
+                out.writeInt(data.get(i).length);
+                offset += data.get(i).length;
+            }
+            for (byte[] bytes : data) {
+                out.write(bytes);
+            }
+        } finally {
+            out.close();
+        }
+        return names.size();
+    }
+
+    private static byte[] toRawPixels(BufferedImage image) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(width * height * 4);
+        DataOutputStream out = new DataOutputStream(bytes);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int pixel : row) {
+                out.writeInt(pixel);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] bytes = new byte[(int) in.length()];
+            in.readFully(bytes);
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+}
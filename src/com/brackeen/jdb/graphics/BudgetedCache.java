@@ -0,0 +1,181 @@
+package com.brackeen.jdb.graphics;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A BudgetedCache keeps values with their memory sizes and, when they take more memory than the budget, evicts the
+ * least recently used, except the most recent. The budget is soft: values that aren't evictable are skipped.
+ * <p>A BudgetedCache is not thread-safe; the image caches that use it call it with their own lock held.</p>
+ */
+class BudgetedCache<K, V> {
+
+    private long budget;
+    private long memoryUsed;
+    private long evictions;
+    private LinkedHashMap<K, Item<V>> items;
+
+    /**
+     * Creates a new BudgetedCache.
+     *
+     * @param budget the most memory the values should take, in bytes
+     */
+    public BudgetedCache(long budget) {
+        this.budget = budget;
+        // access order, so the eldest item is the least recently used
+        items = new LinkedHashMap<K, Item<V>>(16, 0.75f, true);
+    }
+
+    /**
+     * Gets a value, making it the most recently used.
+     *
+     * @param key the value's key
+     * @return the value, or null if it is not cached.
+     */
+    public V get(K key) {
+        Item<V> item = items.get(key);
+        return item == null ? null : item.value;
+    }
+
+    /**
+     * Adds a value, replacing any value with the same key, then evicts values until the cache is within its budget.
+     *
+     * @param key        the value's key
+     * @param value      the value
+     * @param memorySize the memory the value takes, in bytes, or 0 if it is not known yet
+     */
+    public void put(K key, V value, long memorySize) {
+        Item<V> old = items.put(key, new Item<V>(value, memorySize));
+        if (old != null) {
+            memoryUsed -= old.memorySize;
+        }
+        memoryUsed += memorySize;
+        evict();
+    }
+
+    /**
+     * Sets the memory size of a value once it is known, then evicts values until the cache is within its budget.
+     *
+     * @param key        the value's key
+     * @param value      the value
+     * @param memorySize the memory the value takes, in bytes
+     * @return true if the value was set, false if the key no longer maps to the value.
+     */
+    public boolean setMemorySize(K key, V value, long memorySize) {
+        Item<V> item = items.get(key);
+        if (item == null || item.value != value) {
+            return false;
+        }
+        memoryUsed += memorySize - item.memorySize;
+        item.memorySize = memorySize;
+        evict();
+        return true;
+    }
+
+    /**
+     * Removes a value, unless the key maps to a different value.
+     *
+     * @param key   the value's key
+     * @param value the value
+     * @return true if the value was removed.
+     */
+    public boolean remove(K key, V value) {
+        Item<V> item = items.get(key);
+        if (item == null || item.value != value) {
+            return false;
+        }
+        items.remove(key);
+        memoryUsed -= item.memorySize;
+        return true;
+    }
+
+    /**
+     * Removes all values.
+     */
+    public void clear() {
+        items.clear();
+        memoryUsed = 0;
+    }
+
+    /**
+     * Gets the memory taken by the values.
+     *
+     * @return the memory used, in bytes
+     */
+    public long getMemoryUsed() {
+        return memoryUsed;
+    }
+
+    /**
+     * Gets the most memory the values should take.
+     *
+     * @return the memory budget, in bytes
+     */
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Gets the number of values evicted to stay within the budget.
+     *
+     * @return the number of evictions
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Checks whether a value can be evicted. Every value can be, unless a subclass says otherwise.
+     *
+     * @param value the value
+     * @return true if the value can be evicted.
+     */
+    protected boolean isEvictable(V value) {
+        return true;
+    }
+
+    /**
+     * Evicts the least recently used values, except the most recent, until the cache is within its budget.
+     */
+    private void evict() {
+        Iterator<Item<V>> i = items.values().iterator();
+        int remaining = items.size();
+        while (memoryUsed > budget && remaining > 1) {
+            Item<V> item = i.next();
+            remaining--;
+            if (isEvictable(item.value)) {
+                memoryUsed -= item.memorySize;
+                i.remove();
+                evictions++;
+            }
+        }
+    }
+
+    /**
+     * Gets the memory an image's pixels take: the size of its storage, which can be more than its color depth needs
+     * (TYPE_INT_RGB stores 4 bytes per pixel).
+     *
+     * @param image the image
+     * @return the memory size, in bytes
+     */
+    public static long getMemorySize(BufferedImage image) {
+        DataBuffer data = image.getRaster().getDataBuffer();
+        return (long) data.getSize() * data.getNumBanks() * DataBuffer.getDataTypeSize(data.getDataType()) / 8;
+    }
+
+    /**
+     * A cached value and its memory size.
+     */
+    private static class Item<V> {
+
+        V value;
+        long memorySize;
+
+        public Item(V value, long memorySize) {
+            this.value = value;
+            this.memorySize = memorySize;
+        }
+    }
+}
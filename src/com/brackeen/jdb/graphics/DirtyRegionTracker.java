@@ -0,0 +1,115 @@
+package com.brackeen.jdb.graphics;
+
+import java.awt.*;
+import java.util.Arrays;
+
+/**
+ * A DirtyRegionTracker remembers the rectangles drawn over the background in the last few frames, so a frame can
+ * restore just those areas of the background instead of all of it. With page flipping, the back buffer holds the
+ * frame drawn a number of frames ago, so the rectangles of as many previous frames as there are buffers are kept.
+ * <p>Rectangles are stored in int arrays, so tracking doesn't allocate memory once the arrays have grown.</p>
+ */
+class DirtyRegionTracker {
+
+    private int numBuffers;
+    private int numFrames;
+    // rectangles of the current frame and the previous frames as (x, y, width, height), current frame at currFrame
+    private int[][] rects;
+    private int[] numRects;
+    private int currFrame;
+    private int fullRedrawsLeft;
+
+    /**
+     * Creates a new DirtyRegionTracker.
+     *
+     * @param numBuffers the number of buffers in the display's BufferStrategy
+     */
+    public DirtyRegionTracker(int numBuffers) {
+        this.numBuffers = numBuffers;
+        numFrames = numBuffers + 1;
+        rects = new int[numFrames][64];
+        numRects = new int[numFrames];
+        invalidate();
+    }
+
+    /**
+     * Forgets all rectangles, so the next frame in each buffer is redrawn in full.
+     */
+    public void invalidate() {
+        Arrays.fill(numRects, 0);
+        fullRedrawsLeft = numBuffers;
+    }
+
+    /**
+     * Adds a rectangle drawn over the background in the current frame.
+     */
+    public void add(int x, int y, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        int[] frameRects = rects[currFrame];
+        int i = numRects[currFrame] * 4;
+        if (i == frameRects.length) {
+            frameRects = rects[currFrame] = Arrays.copyOf(frameRects, i * 2);
+        }
+        frameRects[i] = x;
+        frameRects[i + 1] = y;
+        frameRects[i + 2] = width;
+        frameRects[i + 3] = height;
+        numRects[currFrame]++;
+    }
+
+    /**
+     * Restores the background of the current frame: the rectangles of the previous frames, or the whole
+     * background if a full redraw is due or the rectangles cover more than the threshold fraction of the screen.
+     *
+     * @param g          graphics context of the current frame
+     * @param background the background image, the size of the screen
+     * @param threshold  the fraction of the screen area above which the whole background is drawn
+     * @return true if the whole background was drawn.
+     */
+    public boolean restore(Graphics g, Image background, float threshold) {
+        int width = background.getWidth(null);
+        int height = background.getHeight(null);
+        boolean full = fullRedrawsLeft > 0;
+        if (!full) {
+            long area = 0;
+            for (int frame = 0; frame < numFrames; frame++) {
+                int[] frameRects = rects[frame];
+                for (int i = 0; i < numRects[frame] * 4; i += 4) {
+                    area += (long) frameRects[i + 2] * frameRects[i + 3];
+                }
+            }
+            full = area > threshold * width * height;
+        }
+
+        if (full) {
+            if (fullRedrawsLeft > 0) {
+                fullRedrawsLeft--;
+            }
+            g.drawImage(background, 0, 0, null);
+        } else {
+            for (int frame = 0; frame < numFrames; frame++) {
+                int[] frameRects = rects[frame];
+                for (int i = 0; i < numRects[frame] * 4; i += 4) {
+                    int x1 = Math.max(0, frameRects[i]);
+                    int y1 = Math.max(0, frameRects[i + 1]);
+                    int x2 = Math.min(width, frameRects[i] + frameRects[i + 2]);
+                    int y2 = Math.min(height, frameRects[i + 1] + frameRects[i + 3]);
+                    if (x1 < x2 && y1 < y2) {
+                        g.drawImage(background, x1, y1, x2, y2, x1, y1, x2, y2, null);
+                    }
+                }
+            }
+        }
+        return full;
+    }
+
+    /**
+     * Ends the current frame. The oldest frame's rectangles are forgotten to make room for the next frame.
+     */
+    public void endFrame() {
+        currFrame = (currFrame + 1) % numFrames;
+        numRects[currFrame] = 0;
+    }
+}
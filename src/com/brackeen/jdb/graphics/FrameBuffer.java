@@ -0,0 +1,332 @@
+package com.brackeen.jdb.graphics;
+
+import com.brackeen.jdb.generic.IndexedTask;
+import com.brackeen.jdb.generic.ThreadPool;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * A FrameBuffer is a software render target: an array of premultiplied ARGB pixels that can be filled, copied, and
+ * alpha-blended directly, without going through Graphics2D. It is presented by drawing its image, a BufferedImage
+ * that shares the pixel array, so presenting doesn't copy the pixels first.
+ * <p>Each operation writes whole rows and, given a ThreadPool, splits large areas into horizontal bands across the
+ * pool's threads. The pixel loops allocate nothing. Java2D can't accelerate an image whose pixels are written
+ * directly, so a FrameBuffer suits effect passes that touch many pixels, not images drawn unchanged every frame.</p>
+ * <p>A FrameBuffer is not thread-safe; use it from one thread at a time.</p>
+ */
+public class FrameBuffer {
+
+    // the smallest area, in pixels, worth splitting across threads
+    private static final int MIN_PARALLEL_PIXELS = 16 * 1024;
+
+    private static final int FILL = 0;
+    private static final int BLEND_COLOR = 1;
+    private static final int COPY = 2;
+    private static final int BLEND = 3;
+
+    private final int width;
+    private final int height;
+    private final int[] pixels;
+    private final BufferedImage image;
+    private final ThreadPool threadPool;
+    private final RowTask rowTask;
+
+    /**
+     * Creates a new transparent FrameBuffer that runs each operation on the calling thread.
+     *
+     * @param width  the width in pixels
+     * @param height the height in pixels
+     */
+    public FrameBuffer(int width, int height) {
+        this(width, height, null);
+    }
+
+    /**
+     * Creates a new transparent FrameBuffer.
+     *
+     * @param width      the width in pixels
+     * @param height     the height in pixels
+     * @param threadPool ThreadPool to split large operations across, or null to run them on the calling thread
+     */
+    public FrameBuffer(int width, int height, ThreadPool threadPool) {
+        this.width = width;
+        this.height = height;
+        this.threadPool = threadPool;
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        rowTask = new RowTask();
+    }
+
+    /**
+     * Gets the width of this FrameBuffer.
+     *
+     * @return width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height of this FrameBuffer.
+     *
+     * @return height in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets the pixels, premultiplied ARGB, row by row. Changes to the array show in this FrameBuffer.
+     *
+     * @return the pixel array
+     */
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    /**
+     * Gets the image that shares this FrameBuffer's pixels.
+     *
+     * @return the image, of type TYPE_INT_ARGB_PRE
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * Makes every pixel transparent.
+     */
+    public void clear() {
+        fill(0, 0, width, height, 0);
+    }
+
+    /**
+     * Sets every pixel in a rectangle to a color. The rectangle is clipped to this FrameBuffer.
+     *
+     * @param x      x-coordinate of the left edge
+     * @param y      y-coordinate of the top edge
+     * @param width  the width of the rectangle
+     * @param height the height of the rectangle
+     * @param argb   the color, non-premultiplied ARGB
+     */
+    public void fill(int x, int y, int width, int height, int argb) {
+        rowTask.color = premultiply(argb);
+        run(FILL, x, y, width, height, null, 0, 0, 0, 0);
+    }
+
+    /**
+     * Blends a color over every pixel in a rectangle, using the color's alpha. The rectangle is clipped to this
+     * FrameBuffer.
+     *
+     * @param x      x-coordinate of the left edge
+     * @param y      y-coordinate of the top edge
+     * @param width  the width of the rectangle
+     * @param height the height of the rectangle
+     * @param argb   the color, non-premultiplied ARGB
+     */
+    public void blend(int x, int y, int width, int height, int argb) {
+        int color = premultiply(argb);
+        if ((color >>> 24) == 255) {
+            rowTask.color = color;
+            run(FILL, x, y, width, height, null, 0, 0, 0, 0);
+        } else if ((color >>> 24) != 0) {
+            rowTask.color = color;
+            run(BLEND_COLOR, x, y, width, height, null, 0, 0, 0, 0);
+        }
+    }
+
+    /**
+     * Copies a rectangle of another FrameBuffer's pixels, replacing the pixels here. The rectangle is clipped to both
+     * FrameBuffers. The source must not be this FrameBuffer.
+     *
+     * @param source  the FrameBuffer to copy from
+     * @param sourceX x-coordinate of the left edge of the rectangle in the source
+     * @param sourceY y-coordinate of the top edge of the rectangle in the source
+     * @param width   the width of the rectangle
+     * @param height  the height of the rectangle
+     * @param x       x-coordinate of the left edge to copy to
+     * @param y       y-coordinate of the top edge to copy to
+     */
+    public void blit(FrameBuffer source, int sourceX, int sourceY, int width, int height, int x, int y) {
+        draw(COPY, source, sourceX, sourceY, width, height, x, y);
+    }
+
+    /**
+     * Blends a rectangle of another FrameBuffer's pixels over the pixels here, using each source pixel's alpha. The
+     * rectangle is clipped to both FrameBuffers. The source must not be this FrameBuffer.
+     *
+     * @param source  the FrameBuffer to blend from
+     * @param sourceX x-coordinate of the left edge of the rectangle in the source
+     * @param sourceY y-coordinate of the top edge of the rectangle in the source
+     * @param width   the width of the rectangle
+     * @param height  the height of the rectangle
+     * @param x       x-coordinate of the left edge to blend to
+     * @param y       y-coordinate of the top edge to blend to
+     */
+    public void blend(FrameBuffer source, int sourceX, int sourceY, int width, int height, int x, int y) {
+        draw(BLEND, source, sourceX, sourceY, width, height, x, y);
+    }
+
+    /**
+     * Copies an image into this FrameBuffer, replacing the pixels under it. Images to blit or blend repeatedly are
+     * best copied into their own FrameBuffer once.
+     *
+     * @param source the image to copy
+     * @param x      x-coordinate of the left edge
+     * @param y      y-coordinate of the top edge
+     */
+    public void copyImage(Image source, int x, int y) {
+        Graphics2D g = image.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        g.drawImage(source, x, y, null);
+        g.dispose();
+    }
+
+    /**
+     * Presents this FrameBuffer by drawing its image.
+     *
+     * @param g graphics context to draw to
+     * @param x x-coordinate of the left edge
+     * @param y y-coordinate of the top edge
+     */
+    public void draw(Graphics g, int x, int y) {
+        g.drawImage(image, x, y, null);
+    }
+
+    /**
+     * Presents a rectangle of this FrameBuffer by drawing that part of its image at the same location.
+     *
+     * @param g      graphics context to draw to
+     * @param x      x-coordinate of the left edge of the rectangle
+     * @param y      y-coordinate of the top edge of the rectangle
+     * @param width  the width of the rectangle
+     * @param height the height of the rectangle
+     */
+    public void draw(Graphics g, int x, int y, int width, int height) {
+        g.drawImage(image, x, y, x + width, y + height, x, y, x + width, y + height, null);
+    }
+
+    private void draw(int op, FrameBuffer source, int sourceX, int sourceY, int width, int height, int x, int y) {
+        // clip to the source, then the destination clips in run()
+        if (sourceX < 0) {
+            width += sourceX;
+            x -= sourceX;
+            sourceX = 0;
+        }
+        if (sourceY < 0) {
+            height += sourceY;
+            y -= sourceY;
+            sourceY = 0;
+        }
+        width = Math.min(width, source.width - sourceX);
+        height = Math.min(height, source.height - sourceY);
+        run(op, x, y, width, height, source.pixels, sourceY * source.width + sourceX, source.width, x, y);
+    }
+
+    /**
+     * Clips a rectangle to this FrameBuffer and runs an operation on each of its rows.
+     */
+    private void run(int op, int x, int y, int width, int height,
+                     int[] source, int sourceOffset, int sourceScan, int originX, int originY) {
+        int x1 = Math.max(x, 0);
+        int y1 = Math.max(y, 0);
+        int x2 = Math.min(x + width, this.width);
+        int y2 = Math.min(y + height, this.height);
+        if (x1 >= x2 || y1 >= y2) {
+            return;
+        }
+
+        RowTask task = rowTask;
+        task.op = op;
+        task.x = x1;
+        task.width = x2 - x1;
+        task.source = source;
+        // offset in the source of the pixel at (0, 0) here
+        task.sourceOffset = sourceOffset - originY * sourceScan - originX;
+        task.sourceScan = sourceScan;
+        int minRows = Math.max(1, MIN_PARALLEL_PIXELS / task.width);
+        try {
+            if (threadPool == null || y2 - y1 <= minRows) {
+                for (int row = y1; row < y2; row++) {
+                    task.run(row);
+                }
+            } else {
+                threadPool.parallelFor(y1, y2, minRows, task);
+            }
+        } finally {
+            task.source = null;
+        }
+    }
+
+    private static int premultiply(int argb) {
+        int a = argb >>> 24;
+        if (a == 255) {
+            return argb;
+        }
+        int r = ((argb >> 16) & 0xff) * a / 255;
+        int g = ((argb >> 8) & 0xff) * a / 255;
+        int b = (argb & 0xff) * a / 255;
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * Blends a premultiplied source pixel over a premultiplied destination pixel. The red and blue channels are
+     * scaled together, then alpha and green.
+     */
+    private static int blend(int src, int dst) {
+        int inverseAlpha = 255 - (src >>> 24);
+        int rb = (dst & 0xff00ff) * inverseAlpha + 0x800080;
+        rb = ((rb + ((rb >> 8) & 0xff00ff)) >> 8) & 0xff00ff;
+        int ag = ((dst >>> 8) & 0xff00ff) * inverseAlpha + 0x800080;
+        ag = (ag + ((ag >> 8) & 0xff00ff)) & 0xff00ff00;
+        return src + (ag | rb);
+    }
+
+    /**
+     * Runs the current operation on one row. Reused for every operation, so it holds the operation's arguments.
+     */
+    private class RowTask implements IndexedTask {
+
+        int op;
+        int x;
+        int width;
+        int color;
+        int[] source;
+        int sourceOffset;
+        int sourceScan;
+
+        @Override
+        public void run(int y) {
+            int offset = y * FrameBuffer.this.width + x;
+            int end = offset + width;
+            switch (op) {
+                case FILL:
+                    Arrays.fill(pixels, offset, end, color);
+                    break;
+                case BLEND_COLOR:
+                    for (int i = offset; i < end; i++) {
+                        pixels[i] = blend(color, pixels[i]);
+                    }
+                    break;
+                case COPY:
+                    System.arraycopy(source, sourceOffset + y * sourceScan + x, pixels, offset, width);
+                    break;
+                case BLEND:
+                    int s = sourceOffset + y * sourceScan + x;
+                    for (int i = offset; i < end; i++, s++) {
+                        int src = source[s];
+                        int alpha = src >>> 24;
+                        if (alpha == 255) {
+                            pixels[i] = src;
+                        } else if (alpha != 0) {
+                            pixels[i] = blend(src, pixels[i]);
+                        }
+                    }
+                    break;
+            }
+        }
+    }
+}
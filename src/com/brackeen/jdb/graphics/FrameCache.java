@@ -0,0 +1,182 @@
+package com.brackeen.jdb.graphics;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+
+/**
+ * The FrameCache class keeps mirrored, rotated, and scaled copies of animation frames as images compatible with the
+ * display, so that transformed frames can be drawn with a plain drawImage() instead of a transformed one, which
+ * usually misses the accelerated blit path.
+ * <p>Copies are created the first time they are asked for. When the copies take more memory than the budget, the
+ * least recently used are evicted (the most recent copy is always kept). A FrameCache is thread-safe.</p>
+ */
+public class FrameCache {
+
+    /**
+     * The default memory budget, in bytes.
+     */
+    public static final long DEFAULT_BUDGET = 8 * 1024 * 1024;
+
+    private ScreenManager screen;
+    private BudgetedCache<Key, BufferedImage> copies;
+
+    /**
+     * Creates a new FrameCache with the default memory budget.
+     *
+     * @param screen ScreenManager used to create the copies
+     */
+    public FrameCache(ScreenManager screen) {
+        this(screen, DEFAULT_BUDGET);
+    }
+
+    /**
+     * Creates a new FrameCache.
+     *
+     * @param screen ScreenManager used to create the copies
+     * @param budget the most memory the copies should take, in bytes
+     */
+    public FrameCache(ScreenManager screen, long budget) {
+        this.screen = screen;
+        copies = new BudgetedCache<Key, BufferedImage>(budget);
+    }
+
+    /**
+     * Gets an image, mirrored horizontally if requested.
+     *
+     * @param source   the frame image
+     * @param mirrored true to flip the image horizontally
+     * @return the source image if it is not mirrored, otherwise a mirrored copy.
+     */
+    public Image getImage(Image source, boolean mirrored) {
+        return getImage(source, mirrored, 0, 1);
+    }
+
+    /**
+     * Gets a transformed copy of an image. The image is mirrored horizontally if requested, then scaled, then rotated
+     * about its center. The copy is just big enough to hold the transformed image, and its center is the source
+     * image's center.
+     *
+     * @param source   the frame image
+     * @param mirrored true to flip the image horizontally
+     * @param angle    angle to rotate the image, in radians
+     * @param scale    factor to scale the image by
+     * @return the source image if the transform does nothing (or the source is not loaded yet), otherwise a
+     * transformed copy.
+     */
+    public synchronized Image getImage(Image source, boolean mirrored, double angle, double scale) {
+        int width = source.getWidth(null);
+        int height = source.getHeight(null);
+        if ((!mirrored && angle == 0 && scale == 1) || width <= 0 || height <= 0) {
+            return source;
+        }
+        Key key = new Key(source, mirrored, angle, scale);
+        BufferedImage copy = copies.get(key);
+        if (copy == null) {
+            copy = createCopy(source, width, height, mirrored, angle, scale);
+            copies.put(key, copy, BudgetedCache.getMemorySize(copy));
+        }
+        return copy;
+    }
+
+    /**
+     * Draws an image with its top-left corner at (x, y), mirrored horizontally if requested.
+     *
+     * @param g        graphics context to draw to
+     * @param source   the frame image
+     * @param x        x-coordinate of the left edge
+     * @param y        y-coordinate of the top edge
+     * @param mirrored true to flip the image horizontally
+     */
+    public void draw(Graphics g, Image source, int x, int y, boolean mirrored) {
+        g.drawImage(getImage(source, mirrored), x, y, null);
+    }
+
+    /**
+     * Gets the memory taken by the cached copies.
+     *
+     * @return the memory used, in bytes
+     */
+    public synchronized long getMemoryUsed() {
+        return copies.getMemoryUsed();
+    }
+
+    /**
+     * Gets the most memory the cached copies should take.
+     *
+     * @return the memory budget, in bytes
+     */
+    public long getBudget() {
+        return copies.getBudget();
+    }
+
+    /**
+     * Removes all cached copies.
+     */
+    public synchronized void clear() {
+        copies.clear();
+    }
+
+    private BufferedImage createCopy(Image source, int width, int height, boolean mirrored, double angle,
+                                     double scale) {
+        double cos = Math.abs(Math.cos(angle));
+        double sin = Math.abs(Math.sin(angle));
+        double scaledWidth = width * scale;
+        double scaledHeight = height * scale;
+        // round up, ignoring the rounding error of cos() and sin() at right angles
+        int copyWidth = Math.max(1, (int) Math.ceil(scaledWidth * cos + scaledHeight * sin - 1e-9));
+        int copyHeight = Math.max(1, (int) Math.ceil(scaledWidth * sin + scaledHeight * cos - 1e-9));
+
+        BufferedImage copy = screen.createCompatibleImage(copyWidth, copyHeight, Transparency.TRANSLUCENT);
+        if (copy == null) {
+            copy = new BufferedImage(copyWidth, copyHeight, BufferedImage.TYPE_INT_ARGB);
+        }
+        AffineTransform transform = new AffineTransform();
+        transform.translate(copyWidth / 2.0, copyHeight / 2.0);
+        transform.rotate(angle);
+        transform.scale(mirrored ? -scale : scale, scale);
+        transform.translate(-width / 2.0, -height / 2.0);
+
+        Graphics2D g = copy.createGraphics();
+        if (angle != 0 || scale != 1) {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        }
+        g.drawImage(source, transform, null);
+        g.dispose();
+        return copy;
+    }
+
+    /**
+     * Identifies a copy: the source image (by identity) and its transform.
+     */
+    private static class Key {
+
+        Image source;
+        boolean mirrored;
+        double angle;
+        double scale;
+
+        public Key(Image source, boolean mirrored, double angle, double scale) {
+            this.source = source;
+            this.mirrored = mirrored;
+            this.angle = angle;
+            this.scale = scale;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) obj;
+            return source == key.source && mirrored == key.mirrored &&
+                    Double.compare(angle, key.angle) == 0 && Double.compare(scale, key.scale) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            long bits = Double.doubleToLongBits(angle) * 31 + Double.doubleToLongBits(scale);
+            return System.identityHashCode(source) * 31 + (int) (bits ^ (bits >>> 32)) + (mirrored ? 1 : 0);
+        }
+    }
+}
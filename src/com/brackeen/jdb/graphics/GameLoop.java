@@ -0,0 +1,513 @@
+package com.brackeen.jdb.graphics;
+
+import java.awt.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The GameLoop class runs a game's update and draw cycle on a ScreenManager's display.
+ * <p>The game is updated in fixed time steps, so the simulation doesn't depend on the frame rate, and is drawn once
+ * per frame with the fraction of a step that has passed since the last update, for interpolating positions between
+ * steps. Time is measured with System.nanoTime().</p>
+ * <p>Frames are paced to a target frame rate: the loop parks the thread until shortly before the next frame is due
+ * and then spins for the rest, which is more precise than sleeping. If a frame falls behind, at most a limited number
+ * of steps are run to catch up, and the rest of the lost time is skipped so a slow machine doesn't spiral.</p>
+ * <p>A GameLoop created with a PipelinedGame runs in pipelined mode: the calling thread updates the game and copies
+ * its state into a snapshot, while a render thread draws the previous snapshot and shows it. Neither thread waits
+ * for the other, so on a multi-core machine a slow BufferStrategy.show() doesn't stall the simulation, and a slow
+ * update doesn't stall drawing of the latest snapshot.</p>
+ */
+public class GameLoop {
+
+    /**
+     * A Game receives the update and draw calls of a GameLoop.
+     */
+    public interface Game {
+
+        /**
+         * Updates the game by one time step.
+         *
+         * @param elapsedTime the time step, in milliseconds
+         */
+        void update(long elapsedTime);
+
+        /**
+         * Draws the game.
+         *
+         * @param g             graphics context to draw to
+         * @param interpolation fraction of a time step, from 0 to 1, that has passed since the last update
+         */
+        void draw(Graphics2D g, float interpolation);
+    }
+
+    /**
+     * A PipelinedGame receives the calls of a GameLoop in pipelined mode. The game state that draw() needs is copied
+     * into snapshots, so drawing one snapshot on the render thread can overlap updating the game on the loop's
+     * thread.
+     *
+     * @param <S> the snapshot type
+     */
+    public interface PipelinedGame<S> {
+
+        /**
+         * Creates an empty snapshot. Called three times when the loop starts.
+         *
+         * @return a new snapshot
+         */
+        S createSnapshot();
+
+        /**
+         * Updates the game by one time step. Called on the thread that called run().
+         *
+         * @param elapsedTime the time step, in milliseconds
+         */
+        void update(long elapsedTime);
+
+        /**
+         * Copies the game state into a snapshot. Called on the thread that called run(), after each frame's updates.
+         *
+         * @param snapshot the snapshot to write to
+         */
+        void takeSnapshot(S snapshot);
+
+        /**
+         * Draws a snapshot. Called on the render thread.
+         *
+         * @param g             graphics context to draw to
+         * @param snapshot      the snapshot to draw
+         * @param interpolation fraction of a time step, from 0 to 1, that had passed since the last update when the
+         *                      snapshot was taken
+         */
+        void draw(Graphics2D g, S snapshot, float interpolation);
+    }
+
+    /**
+     * The default time step of each update, in milliseconds.
+     */
+    public static final long DEFAULT_UPDATE_STEP = 10;
+    /**
+     * The default target frame rate, in frames per second.
+     */
+    public static final int DEFAULT_TARGET_FPS = 60;
+    /**
+     * The default most updates run in one frame to catch up.
+     */
+    public static final int DEFAULT_MAX_UPDATES_PER_FRAME = 5;
+
+    // park until this close to a frame's deadline, then spin
+    private static final long SPIN_TIME = 1000000;
+
+    private ScreenManager screen;
+    private Game game;
+    private PipelinedGame<?> pipelinedGame;
+    private long updateStep;
+    private int targetFps;
+    private int maxUpdatesPerFrame;
+    private volatile boolean running;
+    private volatile long gameTime;
+    private volatile float frameRate;
+    private volatile Throwable renderFailure;
+
+    // loop timing (nanoseconds)
+    private long stepTime;
+    private long accumulator;
+    private long lastTime;
+    private long nextFrameTime;
+    private long frameRateTime;
+    private int frameRateCount;
+
+    /**
+     * Creates a new GameLoop with the default time step, target frame rate, and catch-up limit.
+     *
+     * @param screen ScreenManager to draw to
+     * @param game   Game to update and draw
+     */
+    public GameLoop(ScreenManager screen, Game game) {
+        this.screen = screen;
+        this.game = game;
+        updateStep = DEFAULT_UPDATE_STEP;
+        targetFps = DEFAULT_TARGET_FPS;
+        maxUpdatesPerFrame = DEFAULT_MAX_UPDATES_PER_FRAME;
+    }
+
+    /**
+     * Creates a new GameLoop in pipelined mode, with the default time step, target frame rate, and catch-up limit.
+     * Frames are drawn on a separate render thread.
+     *
+     * @param screen ScreenManager to draw to
+     * @param game   PipelinedGame to update and draw
+     */
+    public GameLoop(ScreenManager screen, PipelinedGame<?> game) {
+        this.screen = screen;
+        this.pipelinedGame = game;
+        updateStep = DEFAULT_UPDATE_STEP;
+        targetFps = DEFAULT_TARGET_FPS;
+        maxUpdatesPerFrame = DEFAULT_MAX_UPDATES_PER_FRAME;
+    }
+
+    /**
+     * Sets the time step of each update.
+     *
+     * @param updateStep the time step, in milliseconds
+     * @throws IllegalArgumentException if updateStep is not positive.
+     */
+    public void setUpdateStep(long updateStep) {
+        if (updateStep <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.updateStep = updateStep;
+    }
+
+    /**
+     * Gets the time step of each update.
+     *
+     * @return the time step, in milliseconds
+     */
+    public long getUpdateStep() {
+        return updateStep;
+    }
+
+    /**
+     * Sets the target frame rate.
+     *
+     * @param targetFps the target frame rate in frames per second, or 0 to draw frames as fast as possible
+     * @throws IllegalArgumentException if targetFps is negative.
+     */
+    public void setTargetFps(int targetFps) {
+        if (targetFps < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.targetFps = targetFps;
+    }
+
+    /**
+     * Gets the target frame rate.
+     *
+     * @return the target frame rate in frames per second, or 0 if frames are drawn as fast as possible
+     */
+    public int getTargetFps() {
+        return targetFps;
+    }
+
+    /**
+     * Sets the most updates run in one frame to catch up after a slow frame. Time beyond that is skipped.
+     *
+     * @param maxUpdatesPerFrame the catch-up limit
+     * @throws IllegalArgumentException if maxUpdatesPerFrame is less than 1.
+     */
+    public void setMaxUpdatesPerFrame(int maxUpdatesPerFrame) {
+        if (maxUpdatesPerFrame < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.maxUpdatesPerFrame = maxUpdatesPerFrame;
+    }
+
+    /**
+     * Gets the most updates run in one frame to catch up after a slow frame.
+     *
+     * @return the catch-up limit
+     */
+    public int getMaxUpdatesPerFrame() {
+        return maxUpdatesPerFrame;
+    }
+
+    /**
+     * Gets the total time the game has been updated by since run() was called.
+     *
+     * @return the game time, in milliseconds
+     */
+    public long getGameTime() {
+        return gameTime;
+    }
+
+    /**
+     * Gets the frame rate measured over the last second.
+     *
+     * @return frames per second
+     */
+    public float getFrameRate() {
+        return frameRate;
+    }
+
+    /**
+     * Runs the loop until stop() is called or the thread is interrupted.
+     */
+    public void run() {
+        run(Long.MAX_VALUE);
+    }
+
+    /**
+     * Runs the loop until the game has been updated for the specified time, stop() is called, or the thread is
+     * interrupted.
+     *
+     * @param duration the game time to run for, in milliseconds
+     */
+    public void run(long duration) {
+        if (pipelinedGame != null) {
+            runPipelined(pipelinedGame, duration);
+            return;
+        }
+        start();
+        while (running && gameTime < duration && !Thread.currentThread().isInterrupted()) {
+            long currTime = System.nanoTime();
+            update(currTime, duration);
+            if (gameTime >= duration) {
+                break;
+            }
+            draw(getInterpolation());
+            countFrame(currTime);
+            waitForNextFrame();
+        }
+        running = false;
+    }
+
+    /**
+     * Runs the loop in pipelined mode. Snapshots pass between this thread and the render thread through three
+     * slots: the one being written, the one being drawn, and the latest one written, which the threads exchange
+     * atomically.
+     */
+    private <S> void runPipelined(final PipelinedGame<S> game, long duration) {
+        final SnapshotExchange<S> exchange = new SnapshotExchange<S>(
+                game.createSnapshot(), game.createSnapshot(), game.createSnapshot());
+        renderFailure = null;
+        start();
+        final Thread updateThread = Thread.currentThread();
+        Thread renderThread = new Thread("GameLoop-render") {
+            @Override
+            public void run() {
+                try {
+                    while (running) {
+                        if (exchange.takeLatest()) {
+                            long currTime = System.nanoTime();
+                            draw(game, exchange.getDrawSnapshot(), exchange.getDrawInterpolation());
+                            countFrame(currTime);
+                        } else {
+                            LockSupport.park(this);
+                        }
+                    }
+                } catch (Throwable t) {
+                    renderFailure = t;
+                    running = false;
+                    LockSupport.unpark(updateThread);
+                }
+            }
+        };
+        renderThread.start();
+
+        try {
+            while (running && gameTime < duration && !Thread.currentThread().isInterrupted()) {
+                update(System.nanoTime(), duration);
+                game.takeSnapshot(exchange.getWriteSnapshot());
+                exchange.publish(getInterpolation());
+                LockSupport.unpark(renderThread);
+                if (targetFps > 0) {
+                    waitForNextFrame();
+                } else {
+                    // nothing new to draw until the next step
+                    waitUntil(lastTime + stepTime - accumulator);
+                }
+            }
+        } finally {
+            running = false;
+            LockSupport.unpark(renderThread);
+            boolean interrupted = false;
+            while (renderThread.isAlive()) {
+                try {
+                    renderThread.join();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        Throwable t = renderFailure;
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        } else if (t instanceof Error) {
+            throw (Error) t;
+        } else if (t != null) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    private void start() {
+        running = true;
+        gameTime = 0;
+        stepTime = updateStep * 1000000;
+        accumulator = 0;
+        lastTime = System.nanoTime();
+        nextFrameTime = lastTime;
+        frameRateTime = lastTime;
+        frameRateCount = 0;
+    }
+
+    /**
+     * Updates the game in fixed steps for the time passed since the last call.
+     */
+    private void update(long currTime, long duration) {
+        accumulator += currTime - lastTime;
+        lastTime = currTime;
+
+        int numUpdates = 0;
+        while (accumulator >= stepTime && gameTime < duration) {
+            if (numUpdates == maxUpdatesPerFrame) {
+                // too far behind: skip the lost time
+                accumulator %= stepTime;
+                break;
+            }
+            if (pipelinedGame != null) {
+                pipelinedGame.update(updateStep);
+            } else {
+                game.update(updateStep);
+            }
+            gameTime += updateStep;
+            accumulator -= stepTime;
+            numUpdates++;
+        }
+    }
+
+    private float getInterpolation() {
+        return Math.min(1, (float) accumulator / stepTime);
+    }
+
+    private void countFrame(long currTime) {
+        frameRateCount++;
+        if (currTime - frameRateTime >= 1000000000) {
+            frameRate = frameRateCount * 1000000000f / (currTime - frameRateTime);
+            frameRateTime = currTime;
+            frameRateCount = 0;
+        }
+    }
+
+    private void waitForNextFrame() {
+        if (targetFps > 0) {
+            long frameTime = 1000000000 / targetFps;
+            nextFrameTime += frameTime;
+            if (System.nanoTime() - nextFrameTime > frameTime) {
+                // more than a frame late: start over from now instead of rushing frames out
+                nextFrameTime = System.nanoTime();
+            }
+            waitUntil(nextFrameTime);
+        }
+    }
+
+    /**
+     * Stops the loop after the current frame. Can be called from any thread.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Checks whether the loop is running.
+     *
+     * @return true if the loop is running.
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void draw(float interpolation) {
+        Graphics2D g = screen.getGraphics();
+        if (g != null) {
+            try {
+                game.draw(g, interpolation);
+            } finally {
+                g.dispose();
+            }
+        }
+        screen.update();
+    }
+
+    private <S> void draw(PipelinedGame<S> game, S snapshot, float interpolation) {
+        Graphics2D g = screen.getGraphics();
+        if (g != null) {
+            try {
+                game.draw(g, snapshot, interpolation);
+            } finally {
+                g.dispose();
+            }
+        }
+        screen.update();
+    }
+
+    /**
+     * Waits until System.nanoTime() reaches the deadline: parks for most of the time, then spins for the last
+     * SPIN_TIME, since parking can overshoot.
+     */
+    private static void waitUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > SPIN_TIME) {
+            LockSupport.parkNanos(remaining - SPIN_TIME);
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+        }
+        while (deadline - System.nanoTime() > 0) {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * A SnapshotExchange passes snapshots from one writer thread to one reader thread without locks. The writer
+     * fills its snapshot and publishes it, taking back the previously published one; the reader takes the latest
+     * published snapshot, giving back the one it drew. Snapshots that are published but never taken are skipped.
+     */
+    private static class SnapshotExchange<S> {
+
+        // set in the published slot if the reader hasn't taken it yet
+        private static final int FRESH = 4;
+
+        private final Object[] snapshots;
+        private final float[] interpolations;
+        private final AtomicInteger published;
+        private int writeIndex;
+        private int drawIndex;
+
+        public SnapshotExchange(S a, S b, S c) {
+            snapshots = new Object[]{a, b, c};
+            interpolations = new float[3];
+            writeIndex = 0;
+            published = new AtomicInteger(1);
+            drawIndex = 2;
+        }
+
+        @SuppressWarnings("unchecked")
+        public S getWriteSnapshot() {
+            return (S) snapshots[writeIndex];
+        }
+
+        /**
+         * Publishes the write snapshot. Called by the writer.
+         */
+        public void publish(float interpolation) {
+            interpolations[writeIndex] = interpolation;
+            writeIndex = published.getAndSet(writeIndex | FRESH) & 3;
+        }
+
+        /**
+         * Takes the latest published snapshot for drawing, if there is a new one. Called by the reader.
+         *
+         * @return true if a new snapshot was taken.
+         */
+        public boolean takeLatest() {
+            if ((published.get() & FRESH) == 0) {
+                return false;
+            }
+            drawIndex = published.getAndSet(drawIndex) & 3;
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        public S getDrawSnapshot() {
+            return (S) snapshots[drawIndex];
+        }
+
+        public float getDrawInterpolation() {
+            return interpolations[drawIndex];
+        }
+    }
+}
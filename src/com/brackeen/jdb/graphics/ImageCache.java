@@ -0,0 +1,297 @@
+package com.brackeen.jdb.graphics;
+
+import com.brackeen.jdb.generic.TaskFuture;
+import com.brackeen.jdb.generic.ThreadPool;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * The ImageCache class loads image files with an ImageLoader and keeps the loaded images, so scenes that use the same
+ * image file share one copy of it and the file is decoded only once.
+ * <p>Images are keyed by file name and transparency mode. Requests for an image that is still loading share the same
+ * load. When the loaded images take more memory (the size of their pixel storage) than the budget, the least
+ * recently used are evicted; the budget is soft, since images still loading and the most recently used image
+ * are never evicted. All images are discarded when the display changes, since they may no longer be compatible with
+ * it. An evicted image stays valid for anyone still holding it. Call dispose() when the cache is no longer needed.
+ * An ImageCache is thread-safe.</p>
+ */
+public class ImageCache implements ScreenManager.DisplayChangeListener {
+
+    /**
+     * The default memory budget, in bytes.
+     */
+    public static final long DEFAULT_BUDGET = 32 * 1024 * 1024;
+
+    private ScreenManager screen;
+    private ThreadPool threadPool;
+    private ImageLoader imageLoader;
+    private long hits;
+    private long misses;
+    private BudgetedCache<Key, Entry> entries;
+
+    /**
+     * Creates a new ImageCache with the default memory budget.
+     *
+     * @param screen     ScreenManager used to create compatible images
+     * @param threadPool ThreadPool to load images on
+     */
+    public ImageCache(ScreenManager screen, ThreadPool threadPool) {
+        this(screen, threadPool, DEFAULT_BUDGET);
+    }
+
+    /**
+     * Creates a new ImageCache. The cache listens to the ScreenManager for display changes.
+     *
+     * @param screen     ScreenManager used to create compatible images
+     * @param threadPool ThreadPool to load images on
+     * @param budget     the most memory the loaded images should take, in bytes
+     */
+    public ImageCache(ScreenManager screen, ThreadPool threadPool, long budget) {
+        this.screen = screen;
+        this.threadPool = threadPool;
+        imageLoader = new ImageLoader(screen, threadPool);
+        entries = new BudgetedCache<Key, Entry>(budget) {
+            @Override
+            protected boolean isEvictable(Entry entry) {
+                // images still loading have no size yet; failed loads have none
+                return entry.loaded || (entry.image != null && entry.image.isDone());
+            }
+        };
+        screen.addDisplayChangeListener(this);
+    }
+
+    /**
+     * Starts loading an image file with the tightest transparency mode it needs, unless it is already loaded or
+     * loading.
+     *
+     * @param fileName name of the image file
+     * @return the completion handle of the image. It fails with an IOException if the file can't be read.
+     */
+    public TaskFuture<BufferedImage> load(String fileName) {
+        return load(fileName, ImageLoader.DETECT_TRANSPARENCY);
+    }
+
+    /**
+     * Starts loading an image file with the specified transparency mode, unless it is already loaded or loading. A
+     * failed load is not cached; the next request for the image tries again.
+     *
+     * @param fileName     name of the image file
+     * @param transparency the transparency mode of the loaded image, from java.awt.Transparency, or
+     *                     ImageLoader.DETECT_TRANSPARENCY
+     * @return the completion handle of the image. It fails with an IOException if the file can't be read.
+     * @throws IllegalStateException if the ThreadPool is closed, or the current thread was interrupted while waiting
+     *                               for the ThreadPool to take the load.
+     */
+    public TaskFuture<BufferedImage> load(String fileName, int transparency) {
+        final Key key = new Key(fileName, transparency);
+        final Entry newEntry = new Entry();
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            while (entry != null && entry.image == null) {
+                // another thread is submitting the load
+                try {
+                    wait();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException();
+                }
+                entry = entries.get(key);
+            }
+            if (entry != null && !isFailed(entry.image)) {
+                hits++;
+                return entry.image;
+            }
+            misses++;
+            entries.put(key, newEntry, 0);
+        }
+
+        // submitted without the cache's lock, since the pool may block until there is room (RejectionPolicy.BLOCK)
+        // or run the load on this thread (RejectionPolicy.CALLER_RUNS)
+        TaskFuture<BufferedImage> image = null;
+        try {
+            final Callable<BufferedImage> loadTask = imageLoader.createLoadTask(fileName, transparency);
+            // the load accounts for its own image, so the cache never holds an image it hasn't measured
+            image = threadPool.submit(new Callable<BufferedImage>() {
+                @Override
+                public BufferedImage call() throws Exception {
+                    BufferedImage image = loadTask.call();
+                    loaded(key, newEntry, image);
+                    return image;
+                }
+            });
+        } finally {
+            synchronized (this) {
+                newEntry.image = image;
+                if (image == null || image.isCancelled()) {
+                    entries.remove(key, newEntry);
+                }
+                notifyAll();
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Gets an image, loading it first if it is not already loaded, and waits for it to load.
+     *
+     * @param fileName name of the image file
+     * @return the loaded image
+     * @throws IOException          if the image could not be read.
+     * @throws InterruptedException if the current thread was interrupted while waiting.
+     */
+    public BufferedImage getImage(String fileName) throws IOException, InterruptedException {
+        return ImageLoader.get(load(fileName));
+    }
+
+    /**
+     * Gets an image with the specified transparency mode, loading it first if it is not already loaded, and waits for
+     * it to load.
+     *
+     * @param fileName     name of the image file
+     * @param transparency the transparency mode of the loaded image, from java.awt.Transparency, or
+     *                     ImageLoader.DETECT_TRANSPARENCY
+     * @return the loaded image
+     * @throws IOException          if the image could not be read.
+     * @throws InterruptedException if the current thread was interrupted while waiting.
+     */
+    public BufferedImage getImage(String fileName, int transparency) throws IOException, InterruptedException {
+        return ImageLoader.get(load(fileName, transparency));
+    }
+
+    /**
+     * Gets the number of requests that found their image loaded or loading.
+     *
+     * @return the number of cache hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of requests that started a load.
+     *
+     * @return the number of cache misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the number of images evicted to stay within the budget.
+     *
+     * @return the number of evictions
+     */
+    public synchronized long getEvictions() {
+        return entries.getEvictions();
+    }
+
+    /**
+     * Gets the memory taken by the loaded images.
+     *
+     * @return the memory used, in bytes
+     */
+    public synchronized long getMemoryUsed() {
+        return entries.getMemoryUsed();
+    }
+
+    /**
+     * Gets the most memory the loaded images should take.
+     *
+     * @return the memory budget, in bytes
+     */
+    public long getBudget() {
+        return entries.getBudget();
+    }
+
+    /**
+     * Removes all images. Loads still in progress complete, but their images are not cached.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Removes all images and stops listening to the ScreenManager for display changes. Loads still in progress
+     * complete, but their images are not cached.
+     */
+    public void dispose() {
+        screen.removeDisplayChangeListener(this);
+        clear();
+    }
+
+    /**
+     * Removes all images, since they may not be compatible with the new display.
+     */
+    @Override
+    public void displayChanged() {
+        clear();
+    }
+
+    /**
+     * Accounts for a loaded image, unless its entry was removed while it was loading. Runs as the last step of the
+     * load, on the thread that ran it.
+     */
+    private synchronized void loaded(Key key, Entry entry, BufferedImage image) {
+        entry.loaded = true;
+        entries.setMemorySize(key, entry, BudgetedCache.getMemorySize(image));
+    }
+
+    private static boolean isFailed(TaskFuture<BufferedImage> image) {
+        if (image.isCancelled()) {
+            return true;
+        }
+        if (!image.isDone()) {
+            return false;
+        }
+        try {
+            image.get();
+            return false;
+        } catch (ExecutionException ex) {
+            return true;
+        } catch (InterruptedException ex) {
+            // can't happen, since the image is done
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * A loaded or loading image. Its completion handle is null while the load is being submitted.
+     */
+    private static class Entry {
+
+        TaskFuture<BufferedImage> image;
+        boolean loaded;
+    }
+
+    /**
+     * Identifies an image: its file name and transparency mode.
+     */
+    private static class Key {
+
+        String fileName;
+        int transparency;
+
+        public Key(String fileName, int transparency) {
+            this.fileName = fileName;
+            this.transparency = transparency;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) obj;
+            return fileName.equals(key.fileName) && transparency == key.transparency;
+        }
+
+        @Override
+        public int hashCode() {
+            return fileName.hashCode() * 31 + transparency;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.brackeen.jdb.graphics;
+
+import com.brackeen.jdb.generic.TaskFuture;
+import com.brackeen.jdb.generic.ThreadPool;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * The ImageLoader class loads image files (PNG, JPEG, or any other format ImageIO can read) in parallel on a
+ * ThreadPool. Each image is decoded and then copied into an image compatible with the display, with the tightest
+ * transparency mode it needs, on the pool's threads, so it is ready to draw quickly when its TaskFuture completes.
+ * <p>Loading many images takes about as long as the slowest image times the number of images divided by the number
+ * of pool threads. A pool from ThreadPool.newTaskThreadPool() loads every image at once.</p>
+ */
+public class ImageLoader {
+
+    /**
+     * Transparency mode that makes a loaded image use the tightest transparency mode it needs.
+     */
+    public static final int DETECT_TRANSPARENCY = 0;
+
+    private ScreenManager screen;
+    private ThreadPool threadPool;
+
+    /**
+     * Creates a new ImageLoader.
+     *
+     * @param screen     ScreenManager used to create compatible images
+     * @param threadPool ThreadPool to load images on
+     */
+    public ImageLoader(ScreenManager screen, ThreadPool threadPool) {
+        this.screen = screen;
+        this.threadPool = threadPool;
+    }
+
+    /**
+     * Starts loading an image file. If the screen is not in full screen mode when the image is decoded, the decoded
+     * image is used as is.
+     *
+     * @param fileName name of the image file
+     * @return the completion handle of the image. It fails with an IOException if the file can't be read.
+     */
+    public TaskFuture<BufferedImage> load(String fileName) {
+        return load(fileName, DETECT_TRANSPARENCY);
+    }
+
+    /**
+     * Starts loading an image file into a compatible image with the specified transparency mode. If the screen is
+     * not in full screen mode when the image is decoded, the decoded image is used as is.
+     *
+     * @param fileName     name of the image file
+     * @param transparency the transparency mode of the loaded image, from java.awt.Transparency, or
+     *                     DETECT_TRANSPARENCY
+     * @return the completion handle of the image. It fails with an IOException if the file can't be read.
+     */
+    public TaskFuture<BufferedImage> load(String fileName, int transparency) {
+        return threadPool.submit(createLoadTask(fileName, transparency));
+    }
+
+    /**
+     * Creates the task that loads an image file, for callers that submit it themselves.
+     */
+    Callable<BufferedImage> createLoadTask(final String fileName, final int transparency) {
+        return new Callable<BufferedImage>() {
+            @Override
+            public BufferedImage call() throws IOException {
+                BufferedImage image = ImageIO.read(new File(fileName));
+                if (image == null) {
+                    throw new IOException("Unsupported image format: " + fileName);
+                }
+                return toCompatibleImage(image, transparency);
+            }
+        };
+    }
+
+    /**
+     * Starts loading a series of image files.
+     *
+     * @param fileNames names of the image files
+     * @return the completion handles of the images, in the same order
+     */
+    public List<TaskFuture<BufferedImage>> loadAll(String[] fileNames) {
+        List<TaskFuture<BufferedImage>> images = new ArrayList<TaskFuture<BufferedImage>>(fileNames.length);
+        for (String fileName : fileNames) {
+            images.add(load(fileName));
+        }
+        return images;
+    }
+
+    /**
+     * Waits for a series of images to load.
+     *
+     * @param images completion handles returned by load() or loadAll()
+     * @return the loaded images, in the same order
+     * @throws IOException          if an image could not be read.
+     * @throws InterruptedException if the current thread was interrupted while waiting.
+     */
+    public static BufferedImage[] getAll(List<TaskFuture<BufferedImage>> images)
+            throws IOException, InterruptedException {
+        BufferedImage[] result = new BufferedImage[images.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = get(images.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Waits for an image to load.
+     *
+     * @param image completion handle returned by load()
+     * @return the loaded image
+     * @throws IOException          if the image could not be read.
+     * @throws InterruptedException if the current thread was interrupted while waiting.
+     */
+    public static BufferedImage get(TaskFuture<BufferedImage> image) throws IOException, InterruptedException {
+        try {
+            return image.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Copies a decoded image into an image compatible with the display, with the specified transparency mode or, for
+     * DETECT_TRANSPARENCY, the tightest transparency mode the image needs.
+     */
+    private BufferedImage toCompatibleImage(BufferedImage image, int transparency) {
+        if (transparency == DETECT_TRANSPARENCY) {
+            transparency = ScreenManager.detectTransparency(image);
+        }
+        BufferedImage copy = screen.createCompatibleImage(image.getWidth(), image.getHeight(), transparency);
+        if (copy == null) {
+            return image;
+        }
+        Graphics2D g = copy.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return copy;
+    }
+}
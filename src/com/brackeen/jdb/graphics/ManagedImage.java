@@ -0,0 +1,84 @@
+package com.brackeen.jdb.graphics;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * A ManagedImage is a copy of an image in a format compatible with the display, with the tightest transparency mode
+ * the image needs, so drawing it doesn't convert pixels. If the display changes, the copy is made again from the
+ * source image the next time it is asked for.
+ * <p>ManagedImages are created with ScreenManager.createManagedImage(). A ManagedImage keeps a reference to its
+ * source image.</p>
+ */
+public class ManagedImage {
+
+    private ScreenManager screen;
+    private Image source;
+    private int transparency;
+    private BufferedImage image;
+    // the display the copy was made for
+    private int displayChangeCount;
+
+    ManagedImage(ScreenManager screen, Image source) {
+        if (source.getWidth(null) < 0 || source.getHeight(null) < 0) {
+            throw new IllegalArgumentException("Image not loaded: " + source);
+        }
+        this.screen = screen;
+        this.source = source;
+        transparency = ScreenManager.detectTransparency(source);
+    }
+
+    /**
+     * Gets the compatible copy of the source image, making it first if the display changed since it was made. If the
+     * screen is not in full screen mode, the copy is an ordinary RGB or ARGB image.
+     *
+     * @return the compatible copy
+     */
+    public synchronized BufferedImage getImage() {
+        int count = screen.getDisplayChangeCount();
+        if (image == null || count != displayChangeCount) {
+            displayChangeCount = count;
+            int width = source.getWidth(null);
+            int height = source.getHeight(null);
+            image = screen.createCompatibleImage(width, height, transparency);
+            if (image == null) {
+                image = new BufferedImage(width, height, transparency == Transparency.OPAQUE ?
+                        BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+            }
+            Graphics2D g = image.createGraphics();
+            g.setComposite(AlphaComposite.Src);
+            g.drawImage(source, 0, 0, null);
+            g.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Gets the source image this ManagedImage was copied from.
+     *
+     * @return the source image
+     */
+    public Image getSource() {
+        return source;
+    }
+
+    /**
+     * Gets the transparency mode detected for the source image.
+     *
+     * @return Transparency.OPAQUE, Transparency.BITMASK, or Transparency.TRANSLUCENT
+     */
+    public int getTransparency() {
+        return transparency;
+    }
+
+    /**
+     * Draws the compatible copy.
+     *
+     * @param g graphics context to draw to
+     * @param x x-coordinate of the left edge
+     * @param y y-coordinate of the top edge
+     */
+    public void draw(Graphics g, int x, int y) {
+        g.drawImage(getImage(), x, y, null);
+    }
+}
@@ -0,0 +1,174 @@
+package com.brackeen.jdb.graphics;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * The ScaledImageCache class keeps scaled copies of images, such as backgrounds stretched to fit the screen, as images
+ * compatible with the display, so an image drawn at a different size each frame is scaled only once.
+ * <p>Copies are keyed by source image and size. When the copies take more memory than the budget, the least recently
+ * used are evicted (the most recent copy is always kept). All copies are discarded when the display changes, since
+ * they may no longer be compatible with it. A ScaledImageCache is thread-safe.</p>
+ */
+public class ScaledImageCache implements ScreenManager.DisplayChangeListener {
+
+    /**
+     * The default memory budget, in bytes.
+     */
+    public static final long DEFAULT_BUDGET = 32 * 1024 * 1024;
+
+    private ScreenManager screen;
+    private BudgetedCache<Key, BufferedImage> copies;
+
+    /**
+     * Creates a new ScaledImageCache with the default memory budget.
+     *
+     * @param screen ScreenManager used to create the copies
+     */
+    public ScaledImageCache(ScreenManager screen) {
+        this(screen, DEFAULT_BUDGET);
+    }
+
+    /**
+     * Creates a new ScaledImageCache. The cache listens to the ScreenManager for display changes.
+     *
+     * @param screen ScreenManager used to create the copies
+     * @param budget the most memory the copies should take, in bytes
+     */
+    public ScaledImageCache(ScreenManager screen, long budget) {
+        this.screen = screen;
+        copies = new BudgetedCache<Key, BufferedImage>(budget);
+        screen.addDisplayChangeListener(this);
+    }
+
+    /**
+     * Gets a copy of an image scaled to the specified size. The copy is translucent unless the source image is known
+     * to be opaque or bitmask.
+     *
+     * @param source the image to scale
+     * @param width  the width of the copy
+     * @param height the height of the copy
+     * @return the scaled copy, or null if the screen is not in full screen mode or the source is not loaded.
+     */
+    public BufferedImage getImage(Image source, int width, int height) {
+        int transparency = Transparency.TRANSLUCENT;
+        if (source instanceof Transparency) {
+            transparency = ((Transparency) source).getTransparency();
+        }
+        return getImage(source, width, height, transparency);
+    }
+
+    /**
+     * Gets a copy of an image scaled to the specified size.
+     *
+     * @param source       the image to scale
+     * @param width        the width of the copy
+     * @param height       the height of the copy
+     * @param transparency the transparency mode of the copy, from java.awt.Transparency
+     * @return the scaled copy, or null if the screen is not in full screen mode or the source is not loaded.
+     */
+    public synchronized BufferedImage getImage(Image source, int width, int height, int transparency) {
+        Key key = new Key(source, width, height, transparency);
+        BufferedImage copy = copies.get(key);
+        if (copy == null) {
+            if (width <= 0 || height <= 0 || source.getWidth(null) < 0) {
+                return null;
+            }
+            copy = screen.createCompatibleImage(width, height, transparency);
+            if (copy == null) {
+                return null;
+            }
+            Graphics2D g = copy.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(source, 0, 0, width, height, null);
+            g.dispose();
+            copies.put(key, copy, BudgetedCache.getMemorySize(copy));
+        }
+        return copy;
+    }
+
+    /**
+     * Draws an image scaled to the specified size, using the cached copy.
+     *
+     * @param g      graphics context to draw to
+     * @param source the image to draw
+     * @param x      x-coordinate of the left edge
+     * @param y      y-coordinate of the top edge
+     * @param width  the width to draw the image at
+     * @param height the height to draw the image at
+     */
+    public void draw(Graphics g, Image source, int x, int y, int width, int height) {
+        BufferedImage copy = getImage(source, width, height);
+        if (copy != null) {
+            g.drawImage(copy, x, y, null);
+        } else {
+            g.drawImage(source, x, y, width, height, null);
+        }
+    }
+
+    /**
+     * Gets the memory taken by the cached copies.
+     *
+     * @return the memory used, in bytes
+     */
+    public synchronized long getMemoryUsed() {
+        return copies.getMemoryUsed();
+    }
+
+    /**
+     * Gets the most memory the cached copies should take.
+     *
+     * @return the memory budget, in bytes
+     */
+    public long getBudget() {
+        return copies.getBudget();
+    }
+
+    /**
+     * Removes all cached copies.
+     */
+    public synchronized void clear() {
+        copies.clear();
+    }
+
+    /**
+     * Removes all cached copies, since they may not be compatible with the new display.
+     */
+    @Override
+    public void displayChanged() {
+        clear();
+    }
+
+    /**
+     * Identifies a copy: the source image (by identity), its size, and its transparency.
+     */
+    private static class Key {
+
+        Image source;
+        int width;
+        int height;
+        int transparency;
+
+        public Key(Image source, int width, int height, int transparency) {
+            this.source = source;
+            this.width = width;
+            this.height = height;
+            this.transparency = transparency;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) obj;
+            return source == key.source && width == key.width && height == key.height &&
+                    transparency == key.transparency;
+        }
+
+        @Override
+        public int hashCode() {
+            return ((System.identityHashCode(source) * 31 + width) * 31 + height) * 31 + transparency;
+        }
+    }
+}
@@ -4,13 +4,47 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferStrategy;
 import java.awt.image.BufferedImage;
+import java.awt.image.PixelGrabber;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * The ScreenManager class manages initializing and displaying full screen graphics mode.
+ * <p>A ScreenManager can also draw a background image, scaled to the screen once and kept in a ScaledImageCache.
+ * With dirty regions enabled, drawBackground() restores only the areas that were drawn over (reported with
+ * addDirtyRegion()) in the frames still in the buffers, instead of the whole screen.</p>
  */
 public class ScreenManager {
 
+    /**
+     * A DisplayChangeListener is notified when the ScreenManager enters or leaves full screen mode, which may change
+     * the display mode and the format of compatible images.
+     */
+    public interface DisplayChangeListener {
+
+        /**
+         * Called after the display changed.
+         */
+        void displayChanged();
+    }
+
+    /**
+     * The default fraction of the screen area above which dirty regions are abandoned for a full redraw.
+     */
+    public static final float DEFAULT_FULL_REDRAW_THRESHOLD = 0.5f;
+
+    private static final int NUM_BUFFERS = 2;
+
     private GraphicsDevice device;
+    private CopyOnWriteArrayList<DisplayChangeListener> displayChangeListeners;
+    private volatile int displayChangeCount;
+    private ScaledImageCache imageCache;
+    private Image background;
+    // the scaled background drawn last, to notice when the cache made a new one
+    private BufferedImage scaledBackground;
+    private DirtyRegionTracker dirtyRegions;
+    // false if the BufferStrategy doesn't keep the contents of its buffers
+    private boolean buffersKeepContents;
+    private float fullRedrawThreshold = DEFAULT_FULL_REDRAW_THRESHOLD;
 
     /**
      * Creates a new ScreenManager object.
@@ -18,6 +52,8 @@ public class ScreenManager {
     public ScreenManager() {
         GraphicsEnvironment environment = GraphicsEnvironment.getLocalGraphicsEnvironment();
         device = environment.getDefaultScreenDevice();
+        displayChangeListeners = new CopyOnWriteArrayList<DisplayChangeListener>();
+        imageCache = new ScaledImageCache(this);
     }
 
     /**
@@ -101,7 +137,17 @@ public class ScreenManager {
             } catch (IllegalArgumentException ignored) {
             }
         }
-        frame.createBufferStrategy(2);
+        frame.createBufferStrategy(NUM_BUFFERS);
+
+        // dirty regions need each back buffer to still hold a frame drawn earlier
+        BufferCapabilities caps = frame.getBufferStrategy().getCapabilities();
+        BufferCapabilities.FlipContents flipContents = caps.getFlipContents();
+        buffersKeepContents = !caps.isPageFlipping() || BufferCapabilities.FlipContents.PRIOR.equals(flipContents) ||
+                BufferCapabilities.FlipContents.COPIED.equals(flipContents);
+        if (dirtyRegions != null) {
+            dirtyRegions.invalidate();
+        }
+        fireDisplayChanged();
     }
 
     /**
@@ -132,6 +178,12 @@ public class ScreenManager {
             if (!strategy.contentsLost()) {
                 strategy.show();
             }
+            if (dirtyRegions != null) {
+                if (strategy.contentsLost()) {
+                    dirtyRegions.invalidate();
+                }
+                dirtyRegions.endFrame();
+            }
             // Sync the display on some systems (on Linux this fixes event queue problems)
             Toolkit.getDefaultToolkit().sync();
         }
@@ -183,6 +235,32 @@ public class ScreenManager {
             window.dispose();
         }
         device.setFullScreenWindow(null);
+        fireDisplayChanged();
+    }
+
+    /**
+     * Adds a listener to be notified when the display changes.
+     *
+     * @param listener the DisplayChangeListener to add
+     */
+    public void addDisplayChangeListener(DisplayChangeListener listener) {
+        displayChangeListeners.add(listener);
+    }
+
+    /**
+     * Removes a listener added with addDisplayChangeListener().
+     *
+     * @param listener the DisplayChangeListener to remove
+     */
+    public void removeDisplayChangeListener(DisplayChangeListener listener) {
+        displayChangeListeners.remove(listener);
+    }
+
+    private void fireDisplayChanged() {
+        displayChangeCount++;
+        for (DisplayChangeListener listener : displayChangeListeners) {
+            listener.displayChanged();
+        }
     }
 
     /**
@@ -201,4 +279,201 @@ public class ScreenManager {
         }
         return null;
     }
+
+    /**
+     * Creates a ManagedImage: a copy of an image compatible with the display, with the tightest transparency mode the
+     * image needs. The copy is made again whenever the display changes.
+     *
+     * @param source a fully loaded image
+     * @return a new ManagedImage
+     * @throws IllegalArgumentException if the image is not loaded.
+     */
+    public ManagedImage createManagedImage(Image source) {
+        return new ManagedImage(this, source);
+    }
+
+    /**
+     * Detects the tightest transparency mode an image needs by checking the alpha of every pixel: OPAQUE if every
+     * pixel is opaque, BITMASK if every pixel is either opaque or fully transparent, and TRANSLUCENT otherwise.
+     *
+     * @param image a fully loaded image
+     * @return Transparency.OPAQUE, Transparency.BITMASK, or Transparency.TRANSLUCENT
+     */
+    public static int detectTransparency(Image image) {
+        int width = image.getWidth(null);
+        int height = image.getHeight(null);
+        if (width <= 0 || height <= 0) {
+            return Transparency.TRANSLUCENT;
+        }
+        BufferedImage bufferedImage = null;
+        if (image instanceof BufferedImage) {
+            bufferedImage = (BufferedImage) image;
+            if (bufferedImage.getTransparency() == Transparency.OPAQUE) {
+                return Transparency.OPAQUE;
+            }
+        }
+
+        // check a row at a time
+        int transparency = Transparency.OPAQUE;
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            if (bufferedImage != null) {
+                bufferedImage.getRGB(0, y, width, 1, row, 0, width);
+            } else {
+                PixelGrabber grabber = new PixelGrabber(image, 0, y, width, 1, row, 0, width);
+                try {
+                    if (!grabber.grabPixels()) {
+                        return Transparency.TRANSLUCENT;
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return Transparency.TRANSLUCENT;
+                }
+            }
+            for (int pixel : row) {
+                int alpha = pixel >>> 24;
+                if (alpha == 0) {
+                    transparency = Transparency.BITMASK;
+                } else if (alpha != 255) {
+                    return Transparency.TRANSLUCENT;
+                }
+            }
+        }
+        return transparency;
+    }
+
+    /**
+     * Gets the number of times the display has changed, for noticing a change without a listener.
+     */
+    int getDisplayChangeCount() {
+        return displayChangeCount;
+    }
+
+    /**
+     * Sets the background image drawn by drawBackground(). The image is scaled to fit the screen.
+     *
+     * @param background the background image, or null for none
+     */
+    public void setBackground(Image background) {
+        this.background = background;
+        if (dirtyRegions != null) {
+            dirtyRegions.invalidate();
+        }
+    }
+
+    /**
+     * Gets the background image drawn by drawBackground().
+     *
+     * @return the background image, or null if there is none
+     */
+    public Image getBackground() {
+        return background;
+    }
+
+    /**
+     * Gets the cache of scaled images this ScreenManager keeps its scaled background in. Other images drawn at a
+     * different size than their own can be cached in it too.
+     *
+     * @return the ScaledImageCache
+     */
+    public ScaledImageCache getImageCache() {
+        return imageCache;
+    }
+
+    /**
+     * Draws the background image, scaled to fit the screen. With dirty regions enabled, only the areas drawn over
+     * in earlier frames are restored, unless they cover more than the full redraw threshold.
+     *
+     * @param g graphics context of the current frame
+     */
+    public void drawBackground(Graphics g) {
+        BufferedImage image = getScaledBackground();
+        if (image == null) {
+            return;
+        }
+        BufferStrategy strategy = getFullScreenWindow().getBufferStrategy();
+        if (dirtyRegions != null && buffersKeepContents) {
+            if (strategy.contentsRestored()) {
+                dirtyRegions.invalidate();
+            }
+            dirtyRegions.restore(g, image, fullRedrawThreshold);
+        } else {
+            g.drawImage(image, 0, 0, null);
+        }
+    }
+
+    /**
+     * Enables or disables dirty regions. When enabled, anything drawn over the background must be reported with
+     * addDirtyRegion() every frame it is drawn.
+     *
+     * @param enabled true to enable dirty regions
+     */
+    public void setDirtyRegionsEnabled(boolean enabled) {
+        if (!enabled) {
+            dirtyRegions = null;
+        } else if (dirtyRegions == null) {
+            dirtyRegions = new DirtyRegionTracker(NUM_BUFFERS);
+        }
+    }
+
+    /**
+     * Checks whether dirty regions are enabled.
+     *
+     * @return true if dirty regions are enabled
+     */
+    public boolean isDirtyRegionsEnabled() {
+        return dirtyRegions != null;
+    }
+
+    /**
+     * Sets the fraction of the screen area above which dirty regions are abandoned and the whole background is
+     * drawn.
+     *
+     * @param fullRedrawThreshold the threshold, from 0 to 1
+     */
+    public void setFullRedrawThreshold(float fullRedrawThreshold) {
+        this.fullRedrawThreshold = fullRedrawThreshold;
+    }
+
+    /**
+     * Gets the fraction of the screen area above which dirty regions are abandoned and the whole background is
+     * drawn.
+     *
+     * @return the threshold, from 0 to 1
+     */
+    public float getFullRedrawThreshold() {
+        return fullRedrawThreshold;
+    }
+
+    /**
+     * Reports an area drawn over the background in the current frame. Does nothing unless dirty regions are enabled.
+     *
+     * @param x      x-coordinate of the area
+     * @param y      y-coordinate of the area
+     * @param width  width of the area
+     * @param height height of the area
+     */
+    public void addDirtyRegion(int x, int y, int width, int height) {
+        if (dirtyRegions != null) {
+            dirtyRegions.add(x, y, width, height);
+        }
+    }
+
+    /**
+     * Gets the background scaled to the screen from the image cache.
+     */
+    private BufferedImage getScaledBackground() {
+        if (background == null) {
+            return null;
+        }
+        BufferedImage image = imageCache.getImage(background, getWidth(), getHeight(), Transparency.OPAQUE);
+        if (image != scaledBackground) {
+            // a new copy (the screen size changed, or the copy was evicted): the buffers don't hold it yet
+            scaledBackground = image;
+            if (dirtyRegions != null) {
+                dirtyRegions.invalidate();
+            }
+        }
+        return image;
+    }
 }
@@ -0,0 +1,326 @@
+package com.brackeen.jdb.graphics;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * The SpatialGrid class is a uniform spatial hash of Sprites, for finding the sprites in a region and the pairs of
+ * sprites that overlap without testing every pair.
+ * <p>Each sprite is filed under the grid cell containing its top-left corner, and cells are hashed into a fixed
+ * number of buckets, so the grid covers an unbounded world. Queries search the cells a sprite of the largest size
+ * seen so far could reach from. Cells should be about the size of a typical sprite.</p>
+ * <p>Call updateAll() (or update() for single sprites) after sprites move. Sprites that stay in their cell cost
+ * nothing but the check, and the grid's lists are stored in int arrays, so per-frame maintenance and queries don't
+ * allocate memory. The grid is not thread-safe.</p>
+ */
+public class SpatialGrid {
+
+    /**
+     * An OverlapListener receives the pairs of sprites found by findOverlaps().
+     */
+    public interface OverlapListener {
+
+        /**
+         * Called for each pair of overlapping sprites.
+         *
+         * @param a one Sprite
+         * @param b the other Sprite
+         */
+        void overlap(Sprite a, Sprite b);
+    }
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int NONE = -1;
+
+    private final float cellSize;
+    private final float invCellSize;
+
+    // per-handle state
+    private Sprite[] sprites;
+    private int[] cellX;
+    private int[] cellY;
+    private int[] next;
+    private int[] prev;
+    private int numHandles;
+    private int[] freeHandles;
+    private int numFree;
+
+    // bucket list heads, indexed by cell hash
+    private int[] bucketHeads;
+    private int bucketMask;
+
+    private float maxWidth;
+    private float maxHeight;
+    private int[] found;
+
+    /**
+     * Creates a new, empty SpatialGrid.
+     *
+     * @param cellSize width and height of each grid cell, in pixels
+     */
+    public SpatialGrid(float cellSize) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.cellSize = cellSize;
+        invCellSize = 1 / cellSize;
+        sprites = new Sprite[INITIAL_CAPACITY];
+        cellX = new int[INITIAL_CAPACITY];
+        cellY = new int[INITIAL_CAPACITY];
+        next = new int[INITIAL_CAPACITY];
+        prev = new int[INITIAL_CAPACITY];
+        freeHandles = new int[INITIAL_CAPACITY];
+        found = new int[INITIAL_CAPACITY];
+        bucketHeads = new int[INITIAL_CAPACITY * 2];
+        bucketMask = bucketHeads.length - 1;
+        Arrays.fill(bucketHeads, NONE);
+    }
+
+    /**
+     * Gets the width and height of each grid cell.
+     *
+     * @return the cell size, in pixels
+     */
+    public float getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Adds a Sprite to this grid.
+     *
+     * @param sprite the Sprite to add
+     * @return a handle for the sprite, used by update() and remove().
+     */
+    public int add(Sprite sprite) {
+        int handle;
+        if (numFree > 0) {
+            handle = freeHandles[--numFree];
+        } else {
+            if (numHandles == sprites.length) {
+                grow();
+            }
+            handle = numHandles++;
+        }
+        sprites[handle] = sprite;
+        cellX[handle] = cellOf(sprite.getX());
+        cellY[handle] = cellOf(sprite.getY());
+        link(handle);
+        growMaxSize(sprite);
+        return handle;
+    }
+
+    /**
+     * Removes a Sprite from this grid.
+     *
+     * @param handle handle returned by add()
+     */
+    public void remove(int handle) {
+        checkHandle(handle);
+        unlink(handle);
+        sprites[handle] = null;
+        freeHandles[numFree++] = handle;
+    }
+
+    /**
+     * Gets the number of sprites in this grid.
+     *
+     * @return the number of sprites
+     */
+    public int size() {
+        return numHandles - numFree;
+    }
+
+    /**
+     * Files a Sprite under its current cell after it moved or changed size.
+     *
+     * @param handle handle returned by add()
+     */
+    public void update(int handle) {
+        checkHandle(handle);
+        move(handle);
+    }
+
+    /**
+     * Files every Sprite under its current cell. Call once per frame after the sprites have moved.
+     */
+    public void updateAll() {
+        for (int handle = 0; handle < numHandles; handle++) {
+            if (sprites[handle] != null) {
+                move(handle);
+            }
+        }
+    }
+
+    /**
+     * Finds the sprites whose bounds overlap a region.
+     *
+     * @param x       left edge of the region
+     * @param y       top edge of the region
+     * @param width   width of the region
+     * @param height  height of the region
+     * @param results collection the sprites are added to
+     * @return the number of sprites found
+     */
+    public int queryRegion(float x, float y, float width, float height, Collection<? super Sprite> results) {
+        int count = collect(x, y, width, height);
+        for (int i = 0; i < count; i++) {
+            results.add(sprites[found[i]]);
+        }
+        return count;
+    }
+
+    /**
+     * Finds every pair of sprites whose bounds overlap. Each pair is reported once.
+     *
+     * @param listener listener called for each overlapping pair
+     * @return the number of pairs found
+     */
+    public int findOverlaps(OverlapListener listener) {
+        int numPairs = 0;
+        for (int a = 0; a < numHandles; a++) {
+            Sprite sprite = sprites[a];
+            if (sprite != null) {
+                int count = collect(sprite.getX(), sprite.getY(), sprite.getWidth(), sprite.getHeight());
+                for (int i = 0; i < count; i++) {
+                    int b = found[i];
+                    // report each pair from its lower handle only
+                    if (b > a) {
+                        listener.overlap(sprite, sprites[b]);
+                        numPairs++;
+                    }
+                }
+            }
+        }
+        return numPairs;
+    }
+
+    /**
+     * Collects the handles of the sprites overlapping a region into the found array.
+     *
+     * @return the number of handles collected
+     */
+    private int collect(float x, float y, float width, float height) {
+        int count = 0;
+        float right = x + width;
+        float bottom = y + height;
+        int minCellX = cellOf(x - maxWidth);
+        int maxCellX = cellOf(right);
+        int minCellY = cellOf(y - maxHeight);
+        int maxCellY = cellOf(bottom);
+
+        long numCells = ((long) maxCellX - minCellX + 1) * ((long) maxCellY - minCellY + 1);
+        if (numCells > bucketHeads.length) {
+            // the region covers more cells than there are buckets: checking every sprite is cheaper
+            for (int handle = 0; handle < numHandles; handle++) {
+                if (sprites[handle] != null && overlaps(handle, x, y, right, bottom)) {
+                    count = addFound(count, handle);
+                }
+            }
+            return count;
+        }
+
+        for (int cy = minCellY; cy <= maxCellY; cy++) {
+            for (int cx = minCellX; cx <= maxCellX; cx++) {
+                for (int handle = bucketHeads[bucketOf(cx, cy)]; handle != NONE; handle = next[handle]) {
+                    // buckets are shared by cells with the same hash; only take this cell's sprites
+                    if (cellX[handle] == cx && cellY[handle] == cy && overlaps(handle, x, y, right, bottom)) {
+                        count = addFound(count, handle);
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    private int addFound(int count, int handle) {
+        if (count == found.length) {
+            found = Arrays.copyOf(found, found.length * 2);
+        }
+        found[count] = handle;
+        return count + 1;
+    }
+
+    private boolean overlaps(int handle, float x, float y, float right, float bottom) {
+        Sprite sprite = sprites[handle];
+        float spriteX = sprite.getX();
+        float spriteY = sprite.getY();
+        return spriteX < right && spriteX + sprite.getWidth() > x &&
+                spriteY < bottom && spriteY + sprite.getHeight() > y;
+    }
+
+    private void move(int handle) {
+        Sprite sprite = sprites[handle];
+        int cx = cellOf(sprite.getX());
+        int cy = cellOf(sprite.getY());
+        if (cx != cellX[handle] || cy != cellY[handle]) {
+            unlink(handle);
+            cellX[handle] = cx;
+            cellY[handle] = cy;
+            link(handle);
+        }
+        growMaxSize(sprite);
+    }
+
+    private void growMaxSize(Sprite sprite) {
+        maxWidth = Math.max(maxWidth, sprite.getWidth());
+        maxHeight = Math.max(maxHeight, sprite.getHeight());
+    }
+
+    private int cellOf(float coordinate) {
+        return (int) Math.floor(coordinate * invCellSize);
+    }
+
+    private int bucketOf(int cx, int cy) {
+        return (cx * 73856093 ^ cy * 19349663) & bucketMask;
+    }
+
+    private void link(int handle) {
+        int bucket = bucketOf(cellX[handle], cellY[handle]);
+        int head = bucketHeads[bucket];
+        next[handle] = head;
+        prev[handle] = NONE;
+        if (head != NONE) {
+            prev[head] = handle;
+        }
+        bucketHeads[bucket] = handle;
+    }
+
+    private void unlink(int handle) {
+        int n = next[handle];
+        int p = prev[handle];
+        if (p != NONE) {
+            next[p] = n;
+        } else {
+            bucketHeads[bucketOf(cellX[handle], cellY[handle])] = n;
+        }
+        if (n != NONE) {
+            prev[n] = p;
+        }
+    }
+
+    private void grow() {
+        int capacity = sprites.length * 2;
+        sprites = Arrays.copyOf(sprites, capacity);
+        cellX = Arrays.copyOf(cellX, capacity);
+        cellY = Arrays.copyOf(cellY, capacity);
+        next = Arrays.copyOf(next, capacity);
+        prev = Arrays.copyOf(prev, capacity);
+        freeHandles = Arrays.copyOf(freeHandles, capacity);
+
+        // keep about two buckets per sprite
+        bucketHeads = new int[capacity * 2];
+        bucketMask = bucketHeads.length - 1;
+        Arrays.fill(bucketHeads, NONE);
+        for (int handle = 0; handle < numHandles; handle++) {
+            if (sprites[handle] != null) {
+                link(handle);
+            }
+        }
+    }
+
+    private void checkHandle(int handle) {
+        if (handle < 0 || handle >= numHandles || sprites[handle] == null) {
+            throw new IllegalArgumentException("Invalid handle: " + handle);
+        }
+    }
+}
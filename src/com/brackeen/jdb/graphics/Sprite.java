@@ -5,6 +5,9 @@ import java.awt.*;
 public class Sprite {
 
     private Animation anim;
+    // shared clip and this Sprite's playback position in it, used instead of anim
+    private AnimationClip clip;
+    private long animTime;
     // position (pixels)
     private float x;
     private float y;
@@ -21,6 +24,16 @@ public class Sprite {
         this.anim = anim;
     }
 
+    /**
+     * Creates a new Sprite object that plays the specified AnimationClip. The clip can be shared by any number of
+     * Sprites; each Sprite keeps its own playback time.
+     *
+     * @param clip AnimationClip to play
+     */
+    public Sprite(AnimationClip clip) {
+        this.clip = clip;
+    }
+
     /**
      * Updates this Sprite's Animation and its position based on the velocity.
      *
@@ -29,7 +42,16 @@ public class Sprite {
     public void update(long elapsedTime) {
         x += dx * elapsedTime;
         y += dy * elapsedTime;
-        anim.update(elapsedTime);
+        if (anim != null) {
+            anim.update(elapsedTime);
+        } else {
+            animTime += elapsedTime;
+            // keep the time within the clip so it never overflows
+            long totalDuration = clip.getTotalDuration();
+            if (animTime >= totalDuration && totalDuration > 0) {
+                animTime = animTime % totalDuration;
+            }
+        }
     }
 
     /**
@@ -74,7 +96,7 @@ public class Sprite {
      * @return width of the Sprite
      */
     public int getWidth() {
-        return anim.getImage().getWidth(null);
+        return getImage().getWidth(null);
     }
 
     /**
@@ -83,7 +105,7 @@ public class Sprite {
      * @return height of the Sprite
      */
     public int getHeight() {
-        return anim.getImage().getHeight(null);
+        return getImage().getHeight(null);
     }
 
     /**
@@ -128,6 +150,23 @@ public class Sprite {
      * @return Image of the Sprite's current Animation frame.
      */
     public Image getImage() {
-        return anim.getImage();
+        if (anim != null) {
+            return anim.getImage();
+        } else {
+            return clip.getImage(animTime);
+        }
+    }
+
+    /**
+     * Gets this Sprite's current frame region, if its frames are TextureAtlas regions.
+     *
+     * @return region of the Sprite's current Animation frame, or null if the frame is not an atlas region.
+     */
+    public TextureAtlas.Region getRegion() {
+        if (anim != null) {
+            return anim.getRegion();
+        } else {
+            return clip.getRegion(animTime);
+        }
     }
 }
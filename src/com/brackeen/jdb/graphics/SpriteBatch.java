@@ -0,0 +1,343 @@
+package com.brackeen.jdb.graphics;
+
+import java.awt.*;
+import java.util.Arrays;
+
+/**
+ * The SpriteBatch class stores many sprites as parallel primitive arrays (positions, velocities, and animation
+ * times) instead of as separate Sprite objects, and updates them all in one pass. The update loops touch memory
+ * sequentially with no virtual calls, which the JIT compiler can unroll and vectorize.
+ * <p>Existing code that works with Sprite objects can use get() to obtain a Sprite view of one index.</p>
+ */
+public class SpriteBatch {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int size;
+    // position (pixels)
+    private float[] x;
+    private float[] y;
+    // velocity (pixels per millisecond)
+    private float[] dx;
+    private float[] dy;
+    // animation clip, its duration, and the playback time in it
+    private AnimationClip[] clips;
+    private long[] clipDurations;
+    private long[] animTimes;
+
+    /**
+     * Creates a new, empty SpriteBatch.
+     */
+    public SpriteBatch() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Creates a new, empty SpriteBatch with room for the specified number of sprites before growing.
+     *
+     * @param capacity initial capacity
+     */
+    public SpriteBatch(int capacity) {
+        capacity = Math.max(1, capacity);
+        x = new float[capacity];
+        y = new float[capacity];
+        dx = new float[capacity];
+        dy = new float[capacity];
+        clips = new AnimationClip[capacity];
+        clipDurations = new long[capacity];
+        animTimes = new long[capacity];
+    }
+
+    /**
+     * Adds a sprite at position (0, 0) with no velocity.
+     *
+     * @param clip AnimationClip the sprite plays
+     * @return the index of the new sprite.
+     */
+    public int add(AnimationClip clip) {
+        if (size == x.length) {
+            int capacity = size * 2;
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            dx = Arrays.copyOf(dx, capacity);
+            dy = Arrays.copyOf(dy, capacity);
+            clips = Arrays.copyOf(clips, capacity);
+            clipDurations = Arrays.copyOf(clipDurations, capacity);
+            animTimes = Arrays.copyOf(animTimes, capacity);
+        }
+        int index = size++;
+        x[index] = 0;
+        y[index] = 0;
+        dx[index] = 0;
+        dy[index] = 0;
+        clips[index] = clip;
+        clipDurations[index] = clip.getTotalDuration();
+        animTimes[index] = 0;
+        return index;
+    }
+
+    /**
+     * Removes a sprite. The last sprite moves into the removed sprite's index, so indices and views of the last
+     * sprite are no longer valid.
+     *
+     * @param index index of the sprite to remove
+     */
+    public void remove(int index) {
+        checkIndex(index);
+        int last = --size;
+        x[index] = x[last];
+        y[index] = y[last];
+        dx[index] = dx[last];
+        dy[index] = dy[last];
+        clips[index] = clips[last];
+        clipDurations[index] = clipDurations[last];
+        animTimes[index] = animTimes[last];
+        clips[last] = null;
+    }
+
+    /**
+     * Gets the number of sprites in this batch.
+     *
+     * @return the number of sprites
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Updates the positions and animations of all sprites based on their velocities.
+     *
+     * @param elapsedTime time in milliseconds since last update() call
+     */
+    public void update(long elapsedTime) {
+        update(elapsedTime, 0, size);
+    }
+
+    /**
+     * Updates the positions and animations of a range of sprites based on their velocities. Updates of disjoint
+     * ranges can run on different threads at once.
+     *
+     * @param elapsedTime time in milliseconds since last update() call
+     * @param from        index of the first sprite to update, inclusive
+     * @param to          index of the last sprite to update, exclusive
+     */
+    public void update(long elapsedTime, int from, int to) {
+        int n = Math.min(to, size);
+        float time = elapsedTime;
+        float[] x = this.x;
+        float[] y = this.y;
+        float[] dx = this.dx;
+        float[] dy = this.dy;
+        for (int i = from; i < n; i++) {
+            x[i] += dx[i] * time;
+        }
+        for (int i = from; i < n; i++) {
+            y[i] += dy[i] * time;
+        }
+
+        long[] animTimes = this.animTimes;
+        long[] clipDurations = this.clipDurations;
+        for (int i = from; i < n; i++) {
+            animTimes[i] = advance(animTimes[i], elapsedTime, clipDurations[i]);
+        }
+    }
+
+    /**
+     * Advances an animation time, wrapping it around the clip duration.
+     */
+    private static long advance(long animTime, long elapsedTime, long duration) {
+        animTime += elapsedTime;
+        if (animTime >= duration && duration > 0) {
+            animTime = animTime % duration;
+        }
+        return animTime;
+    }
+
+    /**
+     * Gets a Sprite view of a sprite in this batch. Reading or changing the view reads or changes this batch, so
+     * code written for Sprite objects works on batched sprites.
+     *
+     * @param index index of the sprite
+     * @return a Sprite backed by this batch
+     */
+    public Sprite get(int index) {
+        checkIndex(index);
+        return new View(index);
+    }
+
+    /**
+     * Gets a sprite's current x position.
+     *
+     * @param index index of the sprite
+     * @return the sprite's current x-coordinate value.
+     */
+    public float getX(int index) {
+        return x[index];
+    }
+
+    /**
+     * Gets a sprite's current y position.
+     *
+     * @param index index of the sprite
+     * @return the sprite's current y-coordinate value.
+     */
+    public float getY(int index) {
+        return y[index];
+    }
+
+    /**
+     * Sets a sprite's current x position.
+     *
+     * @param index index of the sprite
+     * @param x     coordinate value to set
+     */
+    public void setX(int index, float x) {
+        this.x[index] = x;
+    }
+
+    /**
+     * Sets a sprite's current y position.
+     *
+     * @param index index of the sprite
+     * @param y     coordinate value to set
+     */
+    public void setY(int index, float y) {
+        this.y[index] = y;
+    }
+
+    /**
+     * Gets the horizontal velocity of a sprite in pixels per millisecond.
+     *
+     * @param index index of the sprite
+     * @return the sprite's x-coordinate velocity component.
+     */
+    public float getVelocityX(int index) {
+        return dx[index];
+    }
+
+    /**
+     * Gets the vertical velocity of a sprite in pixels per millisecond.
+     *
+     * @param index index of the sprite
+     * @return the sprite's y-coordinate velocity component.
+     */
+    public float getVelocityY(int index) {
+        return dy[index];
+    }
+
+    /**
+     * Sets the horizontal velocity of a sprite in pixels per millisecond.
+     *
+     * @param index index of the sprite
+     * @param dx    x-coordinate velocity component to set
+     */
+    public void setVelocityX(int index, float dx) {
+        this.dx[index] = dx;
+    }
+
+    /**
+     * Sets the vertical velocity of a sprite in pixels per millisecond.
+     *
+     * @param index index of the sprite
+     * @param dy    y-coordinate velocity component to set
+     */
+    public void setVelocityY(int index, float dy) {
+        this.dy[index] = dy;
+    }
+
+    /**
+     * Gets a sprite's current frame Image.
+     *
+     * @param index index of the sprite
+     * @return Image of the sprite's current animation frame.
+     */
+    public Image getImage(int index) {
+        return clips[index].getImage(animTimes[index]);
+    }
+
+    /**
+     * Gets a sprite's current frame region, if its frames are TextureAtlas regions.
+     *
+     * @param index index of the sprite
+     * @return region of the sprite's current animation frame, or null if the frame is not an atlas region.
+     */
+    public TextureAtlas.Region getRegion(int index) {
+        return clips[index].getRegion(animTimes[index]);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    /**
+     * A Sprite whose state lives in this SpriteBatch.
+     */
+    private class View extends Sprite {
+
+        private final int index;
+
+        public View(int index) {
+            super(clips[index]);
+            this.index = index;
+        }
+
+        @Override
+        public void update(long elapsedTime) {
+            x[index] += dx[index] * elapsedTime;
+            y[index] += dy[index] * elapsedTime;
+            animTimes[index] = advance(animTimes[index], elapsedTime, clipDurations[index]);
+        }
+
+        @Override
+        public float getX() {
+            return x[index];
+        }
+
+        @Override
+        public float getY() {
+            return y[index];
+        }
+
+        @Override
+        public void setX(float x) {
+            SpriteBatch.this.x[index] = x;
+        }
+
+        @Override
+        public void setY(float y) {
+            SpriteBatch.this.y[index] = y;
+        }
+
+        @Override
+        public float getVelocityX() {
+            return dx[index];
+        }
+
+        @Override
+        public float getVelocityY() {
+            return dy[index];
+        }
+
+        @Override
+        public void setVelocityX(float dx) {
+            SpriteBatch.this.dx[index] = dx;
+        }
+
+        @Override
+        public void setVelocityY(float dy) {
+            SpriteBatch.this.dy[index] = dy;
+        }
+
+        @Override
+        public Image getImage() {
+            return SpriteBatch.this.getImage(index);
+        }
+
+        @Override
+        public TextureAtlas.Region getRegion() {
+            return SpriteBatch.this.getRegion(index);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.brackeen.jdb.graphics;
+
+import java.awt.*;
+import java.util.ArrayList;
+
+/**
+ * The SpriteRenderer class draws sprites through a camera onto the ScreenManager's display, skipping (culling) any
+ * sprite that lies wholly outside the viewport. Sprites moving left are drawn mirrored.
+ * <p>Sprites can be drawn from an array, where each sprite's bounds are tested against the viewport, or from a
+ * SpatialGrid, where only the sprites in the viewport are visited at all.</p>
+ * <p>Sprites whose frames are TextureAtlas regions are copied straight from the atlas image, and are mirrored by
+ * swapping the edges of the destination rectangle instead of with a transform. A SpriteBatch whose clips share one
+ * atlas is drawn from a single source image. Other sprites are mirrored with copies from a FrameCache, so every
+ * sprite is drawn without a transform.</p>
+ * <p>Each sprite drawn is reported to the ScreenManager as a dirty region.</p>
+ */
+public class SpriteRenderer {
+
+    private ScreenManager screen;
+    // camera position (world pixels at the top-left corner of the screen)
+    private float cameraX;
+    private float cameraY;
+    private FrameCache frameCache;
+    private ArrayList<Sprite> visibleSprites;
+    private int numDrawn;
+    private int numCulled;
+
+    /**
+     * Creates a new SpriteRenderer with the camera at (0, 0).
+     *
+     * @param screen ScreenManager whose display size is the viewport
+     */
+    public SpriteRenderer(ScreenManager screen) {
+        this(screen, new FrameCache(screen));
+    }
+
+    /**
+     * Creates a new SpriteRenderer with the camera at (0, 0) that gets mirrored frames from the specified FrameCache.
+     *
+     * @param screen     ScreenManager whose display size is the viewport
+     * @param frameCache FrameCache to get mirrored frames from
+     */
+    public SpriteRenderer(ScreenManager screen, FrameCache frameCache) {
+        this.screen = screen;
+        this.frameCache = frameCache;
+        visibleSprites = new ArrayList<Sprite>();
+    }
+
+    /**
+     * Sets the camera position: the world position drawn at the top-left corner of the screen.
+     *
+     * @param x world x-coordinate of the camera
+     * @param y world y-coordinate of the camera
+     */
+    public void setCamera(float x, float y) {
+        cameraX = x;
+        cameraY = y;
+    }
+
+    /**
+     * Gets the camera's world x-coordinate, drawn at the left edge of the screen.
+     *
+     * @return world x-coordinate of the camera
+     */
+    public float getCameraX() {
+        return cameraX;
+    }
+
+    /**
+     * Gets the camera's world y-coordinate, drawn at the top edge of the screen.
+     *
+     * @return world y-coordinate of the camera
+     */
+    public float getCameraY() {
+        return cameraY;
+    }
+
+    /**
+     * Draws the sprites that are inside the viewport.
+     *
+     * @param g       graphics context to draw to
+     * @param sprites the sprites to draw
+     */
+    public void draw(Graphics2D g, Sprite[] sprites) {
+        int width = screen.getWidth();
+        int height = screen.getHeight();
+        numDrawn = 0;
+        numCulled = 0;
+        for (Sprite sprite : sprites) {
+            if (isVisible(sprite, width, height)) {
+                drawSprite(g, sprite);
+                numDrawn++;
+            } else {
+                numCulled++;
+            }
+        }
+    }
+
+    /**
+     * Draws the sprites of a SpatialGrid that are inside the viewport. Only the grid cells under the viewport are
+     * searched.
+     *
+     * @param g    graphics context to draw to
+     * @param grid the sprites to draw
+     */
+    public void draw(Graphics2D g, SpatialGrid grid) {
+        visibleSprites.clear();
+        grid.queryRegion(cameraX, cameraY, screen.getWidth(), screen.getHeight(), visibleSprites);
+        for (Sprite sprite : visibleSprites) {
+            drawSprite(g, sprite);
+        }
+        numDrawn = visibleSprites.size();
+        numCulled = grid.size() - numDrawn;
+        visibleSprites.clear();
+    }
+
+    /**
+     * Draws the sprites of a SpriteBatch that are inside the viewport.
+     *
+     * @param g     graphics context to draw to
+     * @param batch the sprites to draw
+     */
+    public void draw(Graphics2D g, SpriteBatch batch) {
+        int width = screen.getWidth();
+        int height = screen.getHeight();
+        int size = batch.size();
+        numDrawn = 0;
+        for (int i = 0; i < size; i++) {
+            int x = Math.round(batch.getX(i) - cameraX);
+            int y = Math.round(batch.getY(i) - cameraY);
+            TextureAtlas.Region region = batch.getRegion(i);
+            if (region != null) {
+                if (x < width && y < height && x + region.getWidth() > 0 && y + region.getHeight() > 0) {
+                    region.draw(g, x, y, batch.getVelocityX(i) < 0);
+                    screen.addDirtyRegion(x, y, region.getWidth(), region.getHeight());
+                    numDrawn++;
+                }
+            } else {
+                Image image = batch.getImage(i);
+                if (x < width && y < height && x + image.getWidth(null) > 0 && y + image.getHeight(null) > 0) {
+                    frameCache.draw(g, image, x, y, batch.getVelocityX(i) < 0);
+                    screen.addDirtyRegion(x, y, image.getWidth(null), image.getHeight(null));
+                    numDrawn++;
+                }
+            }
+        }
+        numCulled = size - numDrawn;
+    }
+
+    /**
+     * Gets the number of sprites drawn by the last draw() call.
+     *
+     * @return number of sprites drawn
+     */
+    public int getNumDrawn() {
+        return numDrawn;
+    }
+
+    /**
+     * Gets the number of sprites skipped by the last draw() call because they were outside the viewport.
+     *
+     * @return number of sprites culled
+     */
+    public int getNumCulled() {
+        return numCulled;
+    }
+
+    private boolean isVisible(Sprite sprite, int width, int height) {
+        float x = sprite.getX() - cameraX;
+        float y = sprite.getY() - cameraY;
+        return x < width && y < height && x + sprite.getWidth() > 0 && y + sprite.getHeight() > 0;
+    }
+
+    private void drawSprite(Graphics2D g, Sprite sprite) {
+        int x = Math.round(sprite.getX() - cameraX);
+        int y = Math.round(sprite.getY() - cameraY);
+        // if the sprite is moving left, flip the image
+        boolean mirrored = sprite.getVelocityX() < 0;
+        TextureAtlas.Region region = sprite.getRegion();
+        if (region != null) {
+            region.draw(g, x, y, mirrored);
+            screen.addDirtyRegion(x, y, region.getWidth(), region.getHeight());
+        } else {
+            Image image = sprite.getImage();
+            frameCache.draw(g, image, x, y, mirrored);
+            screen.addDirtyRegion(x, y, image.getWidth(null), image.getHeight(null));
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.brackeen.jdb.graphics;
+
+import com.brackeen.jdb.generic.IndexedTask;
+import com.brackeen.jdb.generic.ThreadPool;
+
+/**
+ * The SpriteUpdater class updates many sprites in parallel on a ThreadPool. Each frame, the sprites are split into
+ * chunks that the pool's threads and the calling thread update together, and update() returns once every chunk is
+ * done, so there is one barrier per frame.
+ * <p>Each sprite first bounces off the edges of the screen bounds (its velocity is reflected if it is outside the
+ * bounds) and is then updated. Sprites are independent of each other, so the result is the same as updating them
+ * one by one on a single thread.</p>
+ */
+public class SpriteUpdater {
+
+    /**
+     * The number of sprites updated as one task.
+     */
+    public static final int CHUNK_SIZE = 512;
+
+    private ThreadPool threadPool;
+
+    /**
+     * Creates a new SpriteUpdater.
+     *
+     * @param threadPool ThreadPool to update sprites on
+     */
+    public SpriteUpdater(ThreadPool threadPool) {
+        this.threadPool = threadPool;
+    }
+
+    /**
+     * Bounces the sprites off the screen bounds and updates them.
+     *
+     * @param sprites     the sprites to update
+     * @param elapsedTime time in milliseconds since last update() call
+     * @param width       width of the screen bounds
+     * @param height      height of the screen bounds
+     */
+    public void update(final Sprite[] sprites, final long elapsedTime, final int width, final int height) {
+        threadPool.parallelFor(0, numChunks(sprites.length), new IndexedTask() {
+            @Override
+            public void run(int chunk) {
+                int end = Math.min(sprites.length, (chunk + 1) * CHUNK_SIZE);
+                for (int i = chunk * CHUNK_SIZE; i < end; i++) {
+                    Sprite s = sprites[i];
+                    bounce(s, width, height);
+                    s.update(elapsedTime);
+                }
+            }
+        });
+    }
+
+    /**
+     * Bounces the sprites of a SpriteBatch off the screen bounds and updates them.
+     *
+     * @param batch       the sprites to update
+     * @param elapsedTime time in milliseconds since last update() call
+     * @param width       width of the screen bounds
+     * @param height      height of the screen bounds
+     */
+    public void update(final SpriteBatch batch, final long elapsedTime, final int width, final int height) {
+        threadPool.parallelFor(0, numChunks(batch.size()), new IndexedTask() {
+            @Override
+            public void run(int chunk) {
+                int start = chunk * CHUNK_SIZE;
+                int end = Math.min(batch.size(), start + CHUNK_SIZE);
+                for (int i = start; i < end; i++) {
+                    bounce(batch, i, width, height);
+                }
+                batch.update(elapsedTime, start, end);
+            }
+        });
+    }
+
+    private static int numChunks(int numSprites) {
+        return (numSprites + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    }
+
+    /**
+     * Reflects a Sprite's velocity if the Sprite is outside the screen bounds.
+     *
+     * @param s      the Sprite
+     * @param width  width of the screen bounds
+     * @param height height of the screen bounds
+     */
+    public static void bounce(Sprite s, int width, int height) {
+        if (s.getX() < 0) {
+            s.setVelocityX(Math.abs(s.getVelocityX()));
+        } else if (s.getX() + s.getWidth() >= width) {
+            s.setVelocityX(-Math.abs(s.getVelocityX()));
+        }
+        if (s.getY() < 0) {
+            s.setVelocityY(Math.abs(s.getVelocityY()));
+        } else if (s.getY() + s.getHeight() >= height) {
+            s.setVelocityY(-Math.abs(s.getVelocityY()));
+        }
+    }
+
+    private static void bounce(SpriteBatch batch, int i, int width, int height) {
+        float x = batch.getX(i);
+        float y = batch.getY(i);
+        if (x < 0) {
+            batch.setVelocityX(i, Math.abs(batch.getVelocityX(i)));
+        } else if (x + batch.getImage(i).getWidth(null) >= width) {
+            batch.setVelocityX(i, -Math.abs(batch.getVelocityX(i)));
+        }
+        if (y < 0) {
+            batch.setVelocityY(i, Math.abs(batch.getVelocityY(i)));
+        } else if (y + batch.getImage(i).getHeight(null) >= height) {
+            batch.setVelocityY(i, -Math.abs(batch.getVelocityY(i)));
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.brackeen.jdb.graphics;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+
+/**
+ * The TextureAtlas class packs many small images (such as animation frames) into one image compatible with the
+ * display, so drawing them all uses a single source surface. Each packed image becomes a Region of the atlas.
+ * <p>Images are packed in rows (shelves), tallest first, with a transparent pixel between them so that scaled
+ * drawing doesn't bleed neighboring images in. An image that appears more than once is packed once.</p>
+ */
+public class TextureAtlas {
+
+    private static final int PADDING = 1;
+
+    private BufferedImage image;
+    private IdentityHashMap<Image, Region> regions;
+
+    /**
+     * Creates a new TextureAtlas containing the specified images, with the tightest transparency mode the images
+     * need.
+     *
+     * @param screen ScreenManager used to create the atlas image
+     * @param images the images to pack; they must be fully loaded
+     */
+    public TextureAtlas(ScreenManager screen, Image[] images) {
+        this(screen, images, detectTransparency(images));
+    }
+
+    /**
+     * Creates a new TextureAtlas containing the specified images. If the screen is not in full screen mode, the
+     * atlas is an ordinary ARGB image instead of a compatible one.
+     *
+     * @param screen       ScreenManager used to create the atlas image
+     * @param images       the images to pack; they must be fully loaded
+     * @param transparency the transparency mode of the atlas image, from java.awt.Transparency
+     * @throws IllegalArgumentException if an image is not loaded.
+     */
+    public TextureAtlas(ScreenManager screen, Image[] images, int transparency) {
+        // pack each distinct image once
+        regions = new IdentityHashMap<Image, Region>();
+        for (Image source : images) {
+            if (!regions.containsKey(source)) {
+                int width = source.getWidth(null);
+                int height = source.getHeight(null);
+                if (width < 0 || height < 0) {
+                    throw new IllegalArgumentException("Image not loaded: " + source);
+                }
+                regions.put(source, new Region(width, height));
+            }
+        }
+        Region[] packed = regions.values().toArray(new Region[regions.size()]);
+        Dimension size = pack(packed);
+
+        image = screen.createCompatibleImage(size.width, size.height, transparency);
+        if (image == null) {
+            image = new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_ARGB);
+        }
+        Graphics2D g = image.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        for (Image source : regions.keySet()) {
+            Region region = regions.get(source);
+            region.atlas = image;
+            region.image = image.getSubimage(region.x, region.y, region.width, region.height);
+            g.drawImage(source, region.x, region.y, null);
+        }
+        g.dispose();
+    }
+
+    private static int detectTransparency(Image[] images) {
+        // the padding between images is transparent
+        int transparency = Transparency.BITMASK;
+        for (Image image : images) {
+            if (transparency == Transparency.TRANSLUCENT) {
+                break;
+            }
+            transparency = Math.max(transparency, ScreenManager.detectTransparency(image));
+        }
+        return transparency;
+    }
+
+    /**
+     * Places the regions in shelves, tallest first, in an atlas about as wide as it is tall.
+     *
+     * @return the size of the atlas.
+     */
+    private static Dimension pack(Region[] packed) {
+        long area = 0;
+        int maxWidth = 1;
+        for (Region region : packed) {
+            area += (long) (region.width + PADDING) * (region.height + PADDING);
+            maxWidth = Math.max(maxWidth, region.width);
+        }
+        int atlasWidth = Math.max(maxWidth, (int) Math.ceil(Math.sqrt(area)));
+
+        Arrays.sort(packed, new Comparator<Region>() {
+            @Override
+            public int compare(Region a, Region b) {
+                return b.height - a.height;
+            }
+        });
+        int x = 0;
+        int y = 0;
+        int shelfHeight = 0;
+        for (Region region : packed) {
+            if (x > 0 && x + region.width > atlasWidth) {
+                // start a new shelf
+                x = 0;
+                y += shelfHeight + PADDING;
+                shelfHeight = 0;
+            }
+            region.x = x;
+            region.y = y;
+            x += region.width + PADDING;
+            shelfHeight = Math.max(shelfHeight, region.height);
+        }
+        return new Dimension(atlasWidth, Math.max(1, y + shelfHeight));
+    }
+
+    /**
+     * Gets the atlas image holding all the packed images.
+     *
+     * @return the atlas image
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * Gets the Region where an image was packed.
+     *
+     * @param source one of the images this atlas was created with
+     * @return the image's Region, or null if the image is not in this atlas.
+     */
+    public Region getRegion(Image source) {
+        return regions.get(source);
+    }
+
+    /**
+     * Gets the Regions where a series of images were packed.
+     *
+     * @param sources images this atlas was created with
+     * @return array of the images' Regions, in the same order
+     */
+    public Region[] getRegions(Image[] sources) {
+        Region[] result = new Region[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            result[i] = getRegion(sources[i]);
+        }
+        return result;
+    }
+
+    /**
+     * A Region is the rectangle of a TextureAtlas where one image was packed.
+     */
+    public static class Region {
+
+        private BufferedImage atlas;
+        private Image image;
+        private int x;
+        private int y;
+        private int width;
+        private int height;
+
+        private Region(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+
+        /**
+         * Gets the atlas image this Region is part of.
+         *
+         * @return the atlas image
+         */
+        public BufferedImage getAtlas() {
+            return atlas;
+        }
+
+        /**
+         * Gets the x-coordinate of this Region's left edge in the atlas image.
+         *
+         * @return x-coordinate in the atlas
+         */
+        public int getX() {
+            return x;
+        }
+
+        /**
+         * Gets the y-coordinate of this Region's top edge in the atlas image.
+         *
+         * @return y-coordinate in the atlas
+         */
+        public int getY() {
+            return y;
+        }
+
+        /**
+         * Gets the width of this Region, the width of the image packed into it.
+         *
+         * @return width of the Region
+         */
+        public int getWidth() {
+            return width;
+        }
+
+        /**
+         * Gets the height of this Region, the height of the image packed into it.
+         *
+         * @return height of the Region
+         */
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * Gets this Region as an image of its own, for code that needs an Image. The image shares the atlas's
+         * pixels, but drawing it may not be accelerated; use draw() where possible.
+         *
+         * @return image of this Region
+         */
+        public Image getImage() {
+            return image;
+        }
+
+        /**
+         * Draws this Region.
+         *
+         * @param g        graphics context to draw to
+         * @param x        x-coordinate of the left edge
+         * @param y        y-coordinate of the top edge
+         * @param mirrored true to flip the Region horizontally
+         */
+        public void draw(Graphics g, int x, int y, boolean mirrored) {
+            int left = mirrored ? x + width : x;
+            int right = mirrored ? x : x + width;
+            g.drawImage(atlas, left, y, right, y + height,
+                    this.x, this.y, this.x + width, this.y + height, null);
+        }
+    }
+}
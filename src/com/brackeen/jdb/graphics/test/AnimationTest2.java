@@ -1,6 +1,7 @@
 package com.brackeen.jdb.graphics.test;
 
 import com.brackeen.jdb.graphics.Animation;
+import com.brackeen.jdb.graphics.GameLoop;
 import com.brackeen.jdb.graphics.ScreenManager;
 
 import javax.swing.*;
@@ -55,6 +56,7 @@ public class AnimationTest2 {
             DisplayMode displayMode = screen.findFirstCompatibleMode(POSSIBLE_MODES);
             screen.setFullScreen(displayMode);
             loadImages();
+            screen.setBackground(bgImage);
             animationLoop();
         } finally {
             screen.restoreScreen();
@@ -62,33 +64,24 @@ public class AnimationTest2 {
     }
 
     public void animationLoop() {
-        long startTime = System.currentTimeMillis();
-        long currTime = startTime;
-
-        while (currTime - startTime < DEMO_TIME) {
-            long elapsedTime = System.currentTimeMillis() - currTime;
-            currTime += elapsedTime;
-
-            // update animation
-            anim.update(elapsedTime);
-
-            // draw and update screen
-            Graphics2D g = screen.getGraphics();
-            draw(g);
-            g.dispose();
-            screen.update();
-
-            // take a nap
-            try {
-                Thread.sleep(20);
-            } catch (InterruptedException ignored) {
+        GameLoop gameLoop = new GameLoop(screen, new GameLoop.Game() {
+            @Override
+            public void update(long elapsedTime) {
+                // update animation
+                anim.update(elapsedTime);
             }
-        }
+
+            @Override
+            public void draw(Graphics2D g, float interpolation) {
+                AnimationTest2.this.draw(g);
+            }
+        });
+        gameLoop.run(DEMO_TIME);
     }
 
     public void draw(Graphics g) {
-        // draw background
-        g.drawImage(bgImage, 0, 0, screen.getWidth(), screen.getHeight(), null);
+        // draw background (scaled to the screen once, not every frame)
+        screen.drawBackground(g);
 
         // draw frame
         g.drawImage(anim.getImage(), 0, 0, null);
@@ -0,0 +1,71 @@
+package com.brackeen.jdb.graphics.test;
+
+import com.brackeen.jdb.generic.ThreadPool;
+import com.brackeen.jdb.graphics.ImageCache;
+import com.brackeen.jdb.graphics.ScreenManager;
+
+import java.io.IOException;
+import java.util.Random;
+
+public class ImageCacheTest {
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length != 2) {
+            System.out.println("Tests the ImageCache on a ThreadPool that blocks when its queue is full.");
+            System.out.println("Usage: java ImageCacheTest <numLoaders> <numRequests>");
+            System.out.println("   numLoaders - integer: number of threads requesting images at once.");
+            System.out.println("   numRequests - integer: number of images each thread requests.");
+            return;
+        }
+        int numLoaders = Integer.parseInt(args[0]);
+        final int numRequests = Integer.parseInt(args[1]);
+
+        // a small pool with a tiny queue, so loads wait for room, and a budget that holds only a few images
+        ThreadPool threadPool = new ThreadPool(1, 2, 1000, 2, ThreadPool.RejectionPolicy.BLOCK);
+        final ImageCache imageCache = new ImageCache(new ScreenManager(), threadPool, 512 * 1024);
+
+        // request random images from several threads at once
+        Thread[] loaders = new Thread[numLoaders];
+        for (int i=0; i<numLoaders; i++) {
+            final int loaderID = i;
+            loaders[i] = new Thread() {
+                @Override
+                public void run() {
+                    Random rnd = new Random();
+                    for (int j=0; j<numRequests; j++) {
+                        String fileName = IMAGES[rnd.nextInt(IMAGES.length)];
+                        try {
+                            imageCache.getImage(fileName);
+                        } catch (IOException ex) {
+                            System.out.println("Loader " + loaderID + ": can't load " + fileName);
+                        } catch (InterruptedException ex) {
+                            return;
+                        }
+                    }
+                }
+            };
+            loaders[i].start();
+        }
+        for (Thread loader : loaders) {
+            loader.join();
+        }
+
+        System.out.println("Hits: " + imageCache.getHits() + ", misses: " + imageCache.getMisses() +
+                ", evictions: " + imageCache.getEvictions());
+        System.out.println("Memory used: " + imageCache.getMemoryUsed() + " of " + imageCache.getBudget() + " bytes");
+        System.out.println(threadPool.getStats());
+
+        imageCache.dispose();
+        threadPool.close();
+    }
+
+    private static final String[] IMAGES = {
+            "images/player1.png",
+            "images/player2.png",
+            "images/player3.png",
+            "images/opaque.png",
+            "images/transparent.png",
+            "images/translucent.png",
+            "images/antialiased.png"
+    };
+}
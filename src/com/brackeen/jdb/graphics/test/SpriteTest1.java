@@ -1,6 +1,7 @@
 package com.brackeen.jdb.graphics.test;
 
 import com.brackeen.jdb.graphics.Animation;
+import com.brackeen.jdb.graphics.GameLoop;
 import com.brackeen.jdb.graphics.ScreenManager;
 import com.brackeen.jdb.graphics.Sprite;
 
@@ -61,6 +62,7 @@ public class SpriteTest1 {
             DisplayMode displayMode = screen.findFirstCompatibleMode(POSSIBLE_MODES);
             screen.setFullScreen(displayMode);
             loadImages();
+            screen.setBackground(bgImage);
             animationLoop();
         } finally {
             screen.restoreScreen();
@@ -68,28 +70,18 @@ public class SpriteTest1 {
     }
 
     public void animationLoop() {
-        long startTime = System.currentTimeMillis();
-        long currTime = startTime;
-
-        while (currTime - startTime < DEMO_TIME) {
-            long elapsedTime = System.currentTimeMillis() - currTime;
-            currTime += elapsedTime;
-
-            // update animation
-            update(elapsedTime);
-
-            // draw and update screen
-            Graphics2D g = screen.getGraphics();
-            draw(g);
-            g.dispose();
-            screen.update();
-
-            // take a nap
-            try {
-                Thread.sleep(20);
-            } catch (InterruptedException ignored) {
+        GameLoop gameLoop = new GameLoop(screen, new GameLoop.Game() {
+            @Override
+            public void update(long elapsedTime) {
+                SpriteTest1.this.update(elapsedTime);
             }
-        }
+
+            @Override
+            public void draw(Graphics2D g, float interpolation) {
+                SpriteTest1.this.draw(g);
+            }
+        });
+        gameLoop.run(DEMO_TIME);
     }
 
     public void update(long elapsedTime) {
@@ -110,8 +102,8 @@ public class SpriteTest1 {
     }
 
     public void draw(Graphics g) {
-        // draw background (fit to screen)
-        g.drawImage(bgImage, 0, 0, screen.getWidth(), screen.getHeight(), null);
+        // draw background (fit to screen, scaled once)
+        screen.drawBackground(g);
 
         // draw Sprite
         g.drawImage(sprite.getImage(), Math.round(sprite.getX()), Math.round(sprite.getY()), null);
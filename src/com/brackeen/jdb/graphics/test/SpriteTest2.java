@@ -1,12 +1,21 @@
 package com.brackeen.jdb.graphics.test;
 
-import com.brackeen.jdb.graphics.Animation;
+import com.brackeen.jdb.generic.ThreadPool;
+import com.brackeen.jdb.graphics.AnimationClip;
+import com.brackeen.jdb.graphics.FrameBuffer;
+import com.brackeen.jdb.graphics.GameLoop;
+import com.brackeen.jdb.graphics.ImageCache;
+import com.brackeen.jdb.graphics.ImageLoader;
 import com.brackeen.jdb.graphics.ScreenManager;
 import com.brackeen.jdb.graphics.Sprite;
+import com.brackeen.jdb.graphics.SpriteRenderer;
+import com.brackeen.jdb.graphics.SpriteUpdater;
+import com.brackeen.jdb.graphics.TextureAtlas;
 
-import javax.swing.*;
 import java.awt.*;
-import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Arrays;
 
 public class SpriteTest2 {
 
@@ -29,27 +38,45 @@ public class SpriteTest2 {
     private static final int NUM_SPRITES = 3;
 
     private ScreenManager screen;
+    private GameLoop gameLoop;
     private Image bgImage;
     private Sprite[] sprites;
+    private ThreadPool threadPool;
+    private ImageCache imageCache;
+    private SpriteUpdater spriteUpdater;
+    private SpriteRenderer spriteRenderer;
+    private FrameBuffer fadeBuffer;
 
     public void loadImages() {
-        // load images
-        bgImage = loadImage("images/background.jpg");
-        Image player1 = loadImage("images/player1.png");
-        Image player2 = loadImage("images/player2.png");
-        Image player3 = loadImage("images/player3.png");
+        // load images in parallel
+        BufferedImage[] images;
+        try {
+            images = ImageLoader.getAll(Arrays.asList(
+                    imageCache.load("images/background.jpg"),
+                    imageCache.load("images/player1.png"),
+                    imageCache.load("images/player2.png"),
+                    imageCache.load("images/player3.png")));
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        } catch (InterruptedException ex) {
+            throw new RuntimeException(ex);
+        }
+        bgImage = images[0];
+        Image player1 = images[1];
+        Image player2 = images[2];
+        Image player3 = images[3];
+
+        // pack the frames into one atlas image
+        Image[] frames = {player1, player2, player1, player2, player3, player2};
+        TextureAtlas atlas = new TextureAtlas(screen, frames);
+
+        // create one animation clip, shared by all Sprites
+        AnimationClip clip = new AnimationClip(atlas.getRegions(frames), new long[]{250, 150, 150, 150, 200, 150});
 
         // create and initialize Sprites
         sprites = new Sprite[NUM_SPRITES];
         for (int i = 0; i < sprites.length; i++) {
-            Animation anim = new Animation();
-            anim.addFrame(player1, 250);
-            anim.addFrame(player2, 150);
-            anim.addFrame(player1, 150);
-            anim.addFrame(player2, 150);
-            anim.addFrame(player3, 200);
-            anim.addFrame(player2, 150);
-            sprites[i] = new Sprite(anim);
+            sprites[i] = new Sprite(clip);
 
             // select random starting location
             sprites[i].setX((float) Math.random() * (screen.getWidth() - sprites[i].getWidth()));
@@ -61,46 +88,40 @@ public class SpriteTest2 {
         }
     }
 
-    private Image loadImage(String fileName) {
-        return new ImageIcon(fileName).getImage();
-    }
-
     public void run() {
         screen = new ScreenManager();
+        threadPool = new ThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), true);
+        imageCache = new ImageCache(screen, threadPool);
+        spriteUpdater = new SpriteUpdater(threadPool);
+        spriteRenderer = new SpriteRenderer(screen);
         try {
             DisplayMode displayMode = screen.findFirstCompatibleMode(POSSIBLE_MODES);
             screen.setFullScreen(displayMode);
             loadImages();
+            fadeBuffer = new FrameBuffer(screen.getWidth(), screen.getHeight(), threadPool);
+            screen.setBackground(bgImage);
+            screen.setDirtyRegionsEnabled(true);
             animationLoop();
         } finally {
+            threadPool.close();
             screen.restoreScreen();
         }
     }
 
     public void animationLoop() {
-        long startTime = System.currentTimeMillis();
-        long currTime = startTime;
-
-        while (currTime - startTime < DEMO_TIME) {
-            long elapsedTime = System.currentTimeMillis() - currTime;
-            currTime += elapsedTime;
-
-            // update sprites
-            update(elapsedTime);
-
-            // draw and update screen
-            Graphics2D g = screen.getGraphics();
-            draw(g);
-            drawFade(g, currTime - startTime);
-            g.dispose();
-            screen.update();
-
-            // take a nap
-            try {
-                Thread.sleep(20);
-            } catch (InterruptedException ignored) {
+        gameLoop = new GameLoop(screen, new GameLoop.Game() {
+            @Override
+            public void update(long elapsedTime) {
+                SpriteTest2.this.update(elapsedTime);
             }
-        }
+
+            @Override
+            public void draw(Graphics2D g, float interpolation) {
+                SpriteTest2.this.draw(g);
+                drawFade(g, gameLoop.getGameTime());
+            }
+        });
+        gameLoop.run(DEMO_TIME);
     }
 
     public void drawFade(Graphics2D g, long elapsedTime) {
@@ -117,56 +138,25 @@ public class SpriteTest2 {
         int barHeight = screen.getHeight() / numBars;
         int blackHeight = (int) (time * barHeight / FADE_TIME);
 
-        g.setColor(Color.BLACK);
+        // write the bars' pixels directly, then draw only the bars
         for (int i = 0; i < numBars; i++) {
             int y = i * barHeight + (barHeight - blackHeight) / 2;
-            g.fillRect(0, y, screen.getWidth(), blackHeight);
+            fadeBuffer.fill(0, y, screen.getWidth(), blackHeight, 0xff000000);
+            fadeBuffer.draw(g, 0, y, screen.getWidth(), blackHeight);
+            screen.addDirtyRegion(0, y, screen.getWidth(), blackHeight);
         }
     }
 
     public void update(long elapsedTime) {
-
-        for (Sprite s : sprites) {
-            // check Sprite bounds
-            if (s.getX() < 0) {
-                s.setVelocityX(Math.abs(s.getVelocityX()));
-            } else if (s.getX() + s.getWidth() >= screen.getWidth()) {
-                s.setVelocityX(-Math.abs(s.getVelocityX()));
-            }
-            if (s.getY() < 0) {
-                s.setVelocityY(Math.abs(s.getVelocityY()));
-            } else if (s.getY() + s.getHeight() >= screen.getHeight()) {
-                s.setVelocityY(-Math.abs(s.getVelocityY()));
-            }
-
-            // update Sprite
-            s.update(elapsedTime);
-        }
-
+        // check Sprite bounds and update Sprites, split across the thread pool
+        spriteUpdater.update(sprites, elapsedTime, screen.getWidth(), screen.getHeight());
     }
 
     public void draw(Graphics2D g) {
-        // draw background (fit to screen)
-        g.drawImage(bgImage, 0, 0, screen.getWidth(), screen.getHeight(), null);
-
-        // draw Sprites
-        AffineTransform transform = new AffineTransform();
-        for (Sprite sprite : sprites) {
-            // translate the sprite
-            transform.setToTranslation(sprite.getX(), sprite.getY());
-
-            // if the sprite is moving left, flip the image
-            if (sprite.getVelocityX() < 0) {
-                transform.scale(-1, 1);
-                transform.translate(-sprite.getWidth(), 0);
-            } else {
-                transform.scale(1, 1);
-                transform.translate(0, 0);
-            }
-
-            // draw sprite
-            g.drawImage(sprite.getImage(), transform, null);
-        }
+        // draw background (only the areas drawn over in earlier frames)
+        screen.drawBackground(g);
 
+        // draw Sprites (off-screen Sprites are culled)
+        spriteRenderer.draw(g, sprites);
     }
 }